@@ -0,0 +1,368 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.InputFile;
+import org.eclipse.collections.api.multimap.list.ListMultimap;
+
+/**
+ * Throughput and allocation benchmark of the read and write paths. Run with {@code mvn -Pbenchmark verify}, or the
+ * {@code ParquetBenchmark} main class with the compiled classes on the classpath.
+ *
+ * Every case is warmed up and then measured over several iterations of at least {@code bench.iterationMillis} each;
+ * the best iteration is reported as rows (or operations) per second together with the bytes allocated per row by
+ * the benchmark thread. Reads cover the {@code parquet-variety} corpus plus a generated file, writes convert a
+ * generated Avro file. Settings are system properties:
+ * <ul>
+ *   <li>{@code bench.corpus} corpus directory, default {@code parquet-variety}</li>
+ *   <li>{@code bench.rows} rows of the generated files, default 1000000</li>
+ *   <li>{@code bench.footerRowGroups} row groups of the generated footer, default 10000</li>
+ *   <li>{@code bench.warmup} / {@code bench.iterations} default 3 / 5</li>
+ *   <li>{@code bench.iterationMillis} default 1000</li>
+ *   <li>{@code bench.filter} only run cases whose name contains this</li>
+ * </ul>
+ * Numbers are only comparable between runs on the same machine; the parallel read case depends on the core count.
+ */
+public class ParquetBenchmark {
+  private static final List<String> CORPUS = Arrays.asList(
+    "alltypes_dictionary.parquet",
+    "alltypes_plain.snappy.parquet",
+    "datapage_v2.snappy.parquet",
+    "hadoop_lz4_compressed_larger.parquet",
+    "nested_lists.snappy.parquet",
+    "nested_maps.snappy.parquet",
+    "nested_structs.rust.parquet",
+    "byte_array_decimal.parquet",
+    "fixed_length_decimal.parquet",
+    "int64_decimal.parquet");
+
+  private static final Schema GENERATED_SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"generated\", "
+    + "\"fields\": ["
+    + "{\"name\": \"id\", \"type\": \"long\"}, "
+    + "{\"name\": \"name\", \"type\": [\"null\", \"string\"]}, "
+    + "{\"name\": \"score\", \"type\": \"double\"}, "
+    + "{\"name\": \"created\", \"type\": {\"type\": \"int\", \"logicalType\": \"date\"}}, "
+    + "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": \"string\"}}]}");
+
+  private static final LocalKeyRetriever KEYS = new LocalKeyRetriever()
+    .withKey("footer", "0123456789012345".getBytes(StandardCharsets.US_ASCII));
+
+  /**
+   * Footer and all columns encrypted with one key, AES-GCM
+   */
+  private static final ParquetEncryption ENCRYPTION = ParquetEncryption.withFooterKey(KEYS, "footer");
+
+  /**
+   * Codec selection for a 100 MB/s upload of files read once
+   */
+  private static final CodecSelector CODECS = CodecSelector.forBandwidth(100 * 1024 * 1024);
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * Keeps the JIT from discarding the consumed records
+   */
+  private static volatile long values = 0;
+
+  private final int warmup = Integer.getInteger("bench.warmup", 3);
+  private final int iterations = Integer.getInteger("bench.iterations", 5);
+  private final long iterationNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("bench.iterationMillis", 1000L));
+  private final String filter = System.getProperty("bench.filter", "");
+
+  /**
+   * One invocation of the benchmarked code
+   */
+  private interface Operation {
+    /**
+     * @return the number of rows (or operations) processed
+     */
+    long run() throws IOException;
+  }
+
+  public static void main(String[] args) throws IOException {
+    final Path corpus = Paths.get(System.getProperty("bench.corpus", "parquet-variety"));
+    final int rows = Integer.getInteger("bench.rows", 1000000);
+    final int footerRowGroups = Integer.getInteger("bench.footerRowGroups", 10000);
+
+    final Path directory = Files.createTempDirectory("parquet-benchmark");
+    try {
+      final File avro = directory.resolve("generated.avro").toFile();
+      generateAvro(avro, rows);
+      final Path parquet = directory.resolve("generated.parquet");
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new ChunkedOutputFile(new FileChunkSink(parquet)));
+      }
+      System.out.println("generated " + rows + " rows, " + avro.length() + " bytes of Avro, " + Files.size(parquet)
+        + " bytes of Parquet");
+
+      final ParquetBenchmark benchmark = new ParquetBenchmark();
+      for (String name : CORPUS) {
+        final Path file = corpus.resolve(name);
+        if (Files.exists(file)) {
+          try {
+            benchmark.read(name, inputFile(file));
+          } catch (RuntimeException e) {
+            // e.g. codecs the hadoop version on the classpath doesn't ship
+            System.out.println("skipping " + name + ", " + e);
+          }
+        } else {
+          System.out.println("skipping " + name + ", not found in " + corpus);
+        }
+      }
+      benchmark.read("generated.parquet", inputFile(parquet));
+      benchmark.read("generated.parquet through HadoopInputFile",
+        HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(parquet.toUri()), new Configuration()));
+      benchmark.run("read generated.parquet parallel", "rows", () -> {
+        try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(inputFile(parquet), true)) {
+          return consume(records);
+        }
+      });
+      for (BufferPool pool : Arrays.asList(null, BufferPool.heap(BufferPool.DEFAULT_MAX_POOLED_BYTES),
+        BufferPool.direct(BufferPool.DEFAULT_MAX_POOLED_BYTES))) {
+        final ParquetReadOptions options = pool == null ? ParquetReadOptions.builder().build()
+          : ParquetReadOptions.builder().withAllocator(pool).build();
+        benchmark.run("read generated.parquet from InputFile" + (pool == null ? "" : pool.isDirect() ? " direct pool"
+          : " heap pool"), "rows", () -> {
+          try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(inputFile(parquet), options,
+            false)) {
+            return consume(records);
+          }
+        });
+      }
+      benchmark.write(avro, rows);
+      benchmark.writeParts(avro, rows, directory);
+      final Path encrypted = directory.resolve("generated.encrypted.parquet");
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new ChunkedOutputFile(new FileChunkSink(encrypted)), ENCRYPTION);
+      }
+      final ParquetReadOptions decryption = ParquetReadOptions.builder()
+        .withDecryption(ParquetConverter.decryptionProperties(KEYS, null))
+        .build();
+      benchmark.run("read generated.parquet encrypted", "rows", () -> {
+        try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(inputFile(encrypted), decryption,
+          false)) {
+          return consume(records);
+        }
+      });
+      for (CompressionCodecName codec : CodecSelector.DEFAULT_CANDIDATES) {
+        final Path compressed = directory.resolve("generated." + codec.name().toLowerCase() + ".parquet");
+        writeWithCodec(avro, compressed, codec);
+        benchmark.read("generated.parquet " + codec + ", " + Files.size(compressed) + " bytes", inputFile(compressed));
+      }
+      benchmark.removeUnneededColumns(inputFile(parquet), footerRowGroups);
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.deleteIfExists(file);
+        }
+      }
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  /**
+   * Reads through {@link ParquetConverter#getRecords(InputFile, boolean)}, whose readers decompress with an
+   * {@link AllocatingCodecFactory}, so that e.g. LZ4 files don't need the Hadoop native codecs
+   */
+  private void read(String name, InputFile file) throws IOException {
+    run("read " + name, "rows", () -> {
+      try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(file, false)) {
+        return consume(records);
+      }
+    });
+  }
+
+  /**
+   * Visits every record. {@code count()} alone would skip the records altogether since the stream is sized.
+   */
+  private static long consume(Stream<ListMultimap<String, String>> records) {
+    final long[] counts = new long[2];
+    records.forEach(record -> {
+      counts[0]++;
+      counts[1] += record.size();
+    });
+    values += counts[1];
+    return counts[0];
+  }
+
+  private void write(File avro, long rows) throws IOException {
+    run("write generated.avro to InMemoryOutputFile", "rows", () -> {
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new InMemoryOutputFile());
+      }
+      return rows;
+    });
+    run("write generated.avro to ChunkedOutputFile", "rows", () -> {
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new ChunkedOutputFile(new DiscardingSink()));
+      }
+      return rows;
+    });
+    run("write generated.avro to ChunkedOutputFile encrypted", "rows", () -> {
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new ChunkedOutputFile(new DiscardingSink()), ENCRYPTION);
+      }
+      return rows;
+    });
+    run("write generated.avro to ChunkedOutputFile adaptive codec", "rows", () -> {
+      try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>())) {
+        LoadParquet.writeToParquet(reader, new ChunkedOutputFile(new DiscardingSink()), null, CODECS);
+      }
+      return rows;
+    });
+  }
+
+  /**
+   * Writes the Avro file with a given codec, for reading it back
+   */
+  private static void writeWithCodec(File avro, Path file, CompressionCodecName codec) throws IOException {
+    try (DataFileReader<GenericRecord> reader = new DataFileReader<>(avro, new GenericDatumReader<>());
+      ParquetWriter<Object> writer = LoadParquet.newWriter(new ChunkedOutputFile(new FileChunkSink(file)),
+        reader.getSchema(), null, codec)) {
+      for (GenericRecord record : reader) {
+        writer.write(record);
+      }
+    }
+  }
+
+  /**
+   * Parallel conversion into part files, plaintext and encrypted. Allocation is only counted on the benchmark thread.
+   */
+  private void writeParts(File avro, long rows, Path directory) throws IOException {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    final Path parts = Files.createDirectories(directory.resolve("parts"));
+    for (ParquetEncryption encryption : Arrays.asList(null, ENCRYPTION)) {
+      run("write generated.avro parts on " + threads + " threads" + (encryption == null ? "" : " encrypted"), "rows", () -> {
+        for (Path part : ParallelAvroToParquet.writeParts(avro, parts, threads, encryption)) {
+          Files.delete(part);
+        }
+        return rows;
+      });
+    }
+    Files.delete(parts);
+  }
+
+  /**
+   * Trims a footer made of the generated file's row groups repeated {@code rowGroups} times down to one column
+   */
+  private void removeUnneededColumns(InputFile file, int rowGroups) throws IOException {
+    final ParquetMetadata footer;
+    try (ParquetFileReader reader = ParquetFileReader.open(file)) {
+      footer = reader.getFooter();
+    }
+    final List<BlockMetaData> blocks = new ArrayList<>(rowGroups);
+    while (blocks.size() < rowGroups) {
+      blocks.add(footer.getBlocks().get(blocks.size() % footer.getBlocks().size()));
+    }
+    final Set<String> columns = new HashSet<>(Collections.singleton("score"));
+    run("removeUnneededColumns " + rowGroups + " row groups", "footers", () -> {
+      // removeUnneededColumns replaces the block list, so every run starts from a fresh footer
+      new MutableParquetMetadata(new ParquetMetadata(footer.getFileMetaData(), new ArrayList<>(blocks)))
+        .removeUnneededColumns(columns);
+      return 1;
+    });
+  }
+
+  private void run(String name, String unit, Operation operation) throws IOException {
+    if (!name.contains(filter)) {
+      return;
+    }
+    for (int i = 0; i < warmup; i++) {
+      iteration(operation);
+    }
+    double best = 0;
+    double bytesPerUnit = 0;
+    for (int i = 0; i < iterations; i++) {
+      final double[] result = iteration(operation);
+      if (result[0] > best) {
+        best = result[0];
+        bytesPerUnit = result[1];
+      }
+    }
+    System.out.println(String.format("%-50s %,16.0f %s/s %,12.1f bytes/%s", name, best, unit, bytesPerUnit,
+      unit.substring(0, unit.length() - 1)));
+  }
+
+  /**
+   * @return units per second and bytes allocated per unit
+   */
+  private double[] iteration(Operation operation) throws IOException {
+    final long thread = Thread.currentThread().getId();
+    final long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+    final long start = System.nanoTime();
+    long units = 0;
+    long elapsed;
+    do {
+      units += operation.run();
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < iterationNanos);
+    final long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+    return new double[]{units * 1e9 / elapsed, (double) allocated / units};
+  }
+
+  private static void generateAvro(File file, int rows) throws IOException {
+    final GenericData.Record record = new GenericData.Record(GENERATED_SCHEMA);
+    final LocalDate epoch = LocalDate.of(2000, 1, 1);
+    try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(GENERATED_SCHEMA, LoadParquet.GENERIC_DATA))) {
+      writer.create(GENERATED_SCHEMA, file);
+      for (int i = 0; i < rows; i++) {
+        record.put("id", (long) i);
+        record.put("name", i % 5 == 0 ? null : "name" + (i * 7919 % 100000));
+        record.put("score", i / 3.0);
+        record.put("created", epoch.plusDays(i % 10000));
+        record.put("tags", Arrays.asList("tag" + (i % 10), "tag" + (i % 13)));
+        writer.append(record);
+      }
+    }
+  }
+
+  private static InputFile inputFile(Path path) {
+    return new LocalInputFile(path);
+  }
+
+  /**
+   * Measures encoding alone, chunks are dropped as soon as they fill
+   */
+  private static class DiscardingSink implements ChunkSink {
+    @Override
+    public void write(byte[] chunk, int length, Runnable release) {
+      release.run();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void abort() {
+    }
+  }
+}
@@ -0,0 +1,315 @@
+import com.github.luben.zstd.Zstd;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Decompresses SNAPPY, ZSTD and LZ4 pages straight into buffers of an allocator, in one call per page, instead of
+ * through the stream codecs of {@link org.apache.parquet.hadoop.CodecFactory}, which copy every page through
+ * intermediate buffers into a fresh array. Direct pages are decompressed direct to direct. The other codecs and all
+ * compressors are those of the wrapped factory.
+ *
+ * LZ4 is decoded here in Java, since hadoop-core 1.2.1 ships no LZ4 codec: pages framed by Hadoop's Lz4Codec as well
+ * as the bare LZ4 blocks some other writers store under the same codec name.
+ */
+class AllocatingCodecFactory implements CompressionCodecFactory {
+  private final CompressionCodecFactory codecs;
+  private final ByteBufferAllocator allocator;
+  private final Map<CompressionCodecName, BytesInputDecompressor> decompressors =
+    new EnumMap<>(CompressionCodecName.class);
+
+  /**
+   * @param codecs     factory of the compressors and of the decompressors of the other codecs, released with this one
+   * @param allocator  allocates the decompressed pages
+   */
+  AllocatingCodecFactory(CompressionCodecFactory codecs, ByteBufferAllocator allocator) {
+    this.codecs = codecs;
+    this.allocator = allocator;
+  }
+
+  @Override
+  public BytesInputCompressor getCompressor(CompressionCodecName codecName) {
+    return codecs.getCompressor(codecName);
+  }
+
+  @Override
+  public BytesInputDecompressor getDecompressor(CompressionCodecName codecName) {
+    switch (codecName) {
+      case SNAPPY:
+      case ZSTD:
+      case LZ4:
+        return decompressors.computeIfAbsent(codecName, Decompressor::new);
+      default:
+        return codecs.getDecompressor(codecName);
+    }
+  }
+
+  @Override
+  public void release() {
+    codecs.release();
+  }
+
+  private class Decompressor implements BytesInputDecompressor {
+    private final CompressionCodecName codecName;
+
+    private Decompressor(CompressionCodecName codecName) {
+      this.codecName = codecName;
+    }
+
+    @Override
+    public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+      // a slice of the column chunk buffer, unless the page spans two of them
+      final ByteBuffer input = bytes.toByteBuffer();
+      final ByteBuffer output = allocator.allocate(uncompressedSize);
+      decompress(input, input.remaining(), output, uncompressedSize);
+      return BytesInput.from(output);
+    }
+
+    /**
+     * Leaves the positions of both buffers as they are, the output is decompressed from its position on
+     */
+    @Override
+    public void decompress(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize)
+      throws IOException {
+      final int inputStart = input.position();
+      final int outputStart = output.position();
+      final int decompressed;
+      switch (codecName) {
+        case SNAPPY:
+          decompressed = snappy(input, compressedSize, output, uncompressedSize);
+          break;
+        case ZSTD:
+          decompressed = zstd(input, compressedSize, output, uncompressedSize);
+          break;
+        default:
+          decompressed = Lz4.decompress(input, inputStart, compressedSize, output, outputStart, uncompressedSize);
+      }
+      if (decompressed != uncompressedSize) {
+        throw new IOException(codecName + " page decompressed to " + decompressed + " bytes instead of "
+          + uncompressedSize);
+      }
+    }
+
+    @Override
+    public void release() {
+    }
+  }
+
+  private static int snappy(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize)
+    throws IOException {
+    if (input.isDirect() && output.isDirect()) {
+      final ByteBuffer in = input.duplicate();
+      in.limit(in.position() + compressedSize);
+      final ByteBuffer out = output.duplicate();
+      out.limit(out.position() + uncompressedSize);
+      return Snappy.uncompress(in, out);
+    }
+    final byte[] in = array(input, compressedSize);
+    final int inOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+    if (output.hasArray()) {
+      return Snappy.uncompress(in, inOffset, compressedSize, output.array(), output.arrayOffset() + output.position());
+    }
+    final byte[] out = new byte[uncompressedSize];
+    final int decompressed = Snappy.uncompress(in, inOffset, compressedSize, out, 0);
+    output.duplicate().put(out, 0, decompressed);
+    return decompressed;
+  }
+
+  private static int zstd(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize)
+    throws IOException {
+    final long decompressed;
+    if (input.isDirect() && output.isDirect()) {
+      decompressed = Zstd.decompressDirectByteBuffer(output, output.position(), uncompressedSize, input,
+        input.position(), compressedSize);
+    } else {
+      final byte[] in = array(input, compressedSize);
+      final int inOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+      if (output.hasArray()) {
+        decompressed = Zstd.decompressByteArray(output.array(), output.arrayOffset() + output.position(),
+          uncompressedSize, in, inOffset, compressedSize);
+      } else {
+        final byte[] out = new byte[uncompressedSize];
+        decompressed = Zstd.decompressByteArray(out, 0, uncompressedSize, in, inOffset, compressedSize);
+        if (!Zstd.isError(decompressed)) {
+          output.duplicate().put(out, 0, (int) decompressed);
+        }
+      }
+    }
+    if (Zstd.isError(decompressed)) {
+      throw new IOException("ZSTD page failed to decompress: " + Zstd.getErrorName(decompressed));
+    }
+    return (int) decompressed;
+  }
+
+  /**
+   * The backing array of a heap buffer, or a copy of the bytes of a direct one
+   */
+  private static byte[] array(ByteBuffer buffer, int length) {
+    if (buffer.hasArray()) {
+      return buffer.array();
+    }
+    final byte[] bytes = new byte[length];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /**
+   * LZ4 block decoding on absolute positions, so heap and direct buffers are read alike
+   */
+  static class Lz4 {
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * Decodes Hadoop framed LZ4 if the input parses as such, a bare LZ4 block otherwise
+     *
+     * @return the number of bytes decompressed
+     */
+    static int decompress(ByteBuffer in, int inOffset, int inLength, ByteBuffer out, int outOffset, int outLength)
+      throws IOException {
+      final int framed = decompressHadoop(in, inOffset, inLength, out, outOffset, outLength);
+      if (framed >= 0) {
+        return framed;
+      }
+      try {
+        return decompressBlock(in, inOffset, inLength, out, outOffset, outLength);
+      } catch (IndexOutOfBoundsException e) {
+        throw new IOException("Malformed LZ4 page", e);
+      }
+    }
+
+    /**
+     * Hadoop's BlockCompressorStream frames: the uncompressed length of a block, then the compressed length and the
+     * bytes of each of its LZ4 blocks, all lengths 4-byte big endian
+     *
+     * @return the number of bytes decompressed, -1 when the input isn't framed this way or doesn't fill the output
+     */
+    private static int decompressHadoop(ByteBuffer in, int inOffset, int inLength, ByteBuffer out, int outOffset,
+      int outLength) {
+      int inPos = inOffset;
+      final int inEnd = inOffset + inLength;
+      int outPos = outOffset;
+      final int outEnd = outOffset + outLength;
+      try {
+        while (inPos < inEnd) {
+          if (inEnd - inPos < 8) {
+            return -1;
+          }
+          int blockRemaining = readIntBigEndian(in, inPos);
+          inPos += 4;
+          if (blockRemaining < 0 || blockRemaining > outEnd - outPos) {
+            return -1;
+          }
+          while (blockRemaining > 0) {
+            if (inEnd - inPos < 4) {
+              return -1;
+            }
+            final int compressed = readIntBigEndian(in, inPos);
+            inPos += 4;
+            if (compressed <= 0 || compressed > inEnd - inPos) {
+              return -1;
+            }
+            final int decompressed = decompressBlock(in, inPos, compressed, out, outPos, blockRemaining);
+            inPos += compressed;
+            outPos += decompressed;
+            blockRemaining -= decompressed;
+          }
+        }
+      } catch (IOException | IndexOutOfBoundsException e) {
+        // a bare block whose first bytes happened to look like lengths
+        return -1;
+      }
+      return outPos == outEnd ? outLength : -1;
+    }
+
+    /**
+     * @return the number of bytes decompressed
+     */
+    private static int decompressBlock(ByteBuffer in, int inOffset, int inLength, ByteBuffer out, int outOffset,
+      int outLength) throws IOException {
+      int inPos = inOffset;
+      final int inEnd = inOffset + inLength;
+      int outPos = outOffset;
+      final int outEnd = outOffset + outLength;
+      // views for the bulk copies, which leave the positions of the buffers alone
+      final ByteBuffer literalSource = in.duplicate();
+      final ByteBuffer matchSource = out.duplicate();
+      final ByteBuffer target = out.duplicate();
+      while (inPos < inEnd) {
+        final int token = in.get(inPos++) & 0xFF;
+        int literals = token >>> 4;
+        if (literals == 15) {
+          int more;
+          do {
+            checkRemaining(inPos, inEnd, 1);
+            more = in.get(inPos++) & 0xFF;
+            literals += more;
+          } while (more == 255);
+        }
+        if (literals > inEnd - inPos || literals > outEnd - outPos) {
+          throw new IOException("LZ4 literals run past the end of the block");
+        }
+        copy(literalSource, inPos, target, outPos, literals);
+        inPos += literals;
+        outPos += literals;
+        if (inPos == inEnd) {
+          // the last sequence has literals only
+          break;
+        }
+        checkRemaining(inPos, inEnd, 2);
+        final int offset = (in.get(inPos) & 0xFF) | (in.get(inPos + 1) & 0xFF) << 8;
+        inPos += 2;
+        int matchLength = token & 0x0F;
+        if (matchLength == 15) {
+          int more;
+          do {
+            checkRemaining(inPos, inEnd, 1);
+            more = in.get(inPos++) & 0xFF;
+            matchLength += more;
+          } while (more == 255);
+        }
+        matchLength += MIN_MATCH;
+        if (offset == 0 || offset > outPos - outOffset || matchLength > outEnd - outPos) {
+          throw new IOException("LZ4 match outside of the decompressed bytes");
+        }
+        if (offset >= matchLength) {
+          copy(matchSource, outPos - offset, target, outPos, matchLength);
+          outPos += matchLength;
+        } else {
+          // byte by byte, the match overlaps the bytes it produces
+          for (int i = 0; i < matchLength; i++) {
+            out.put(outPos, out.get(outPos - offset));
+            outPos++;
+          }
+        }
+      }
+      return outPos - outOffset;
+    }
+
+    private static void copy(ByteBuffer source, int sourcePos, ByteBuffer target, int targetPos, int length) {
+      source.limit(sourcePos + length);
+      source.position(sourcePos);
+      target.position(targetPos);
+      target.put(source);
+    }
+
+    /**
+     * Fails on a truncated block, instead of reading on into the bytes that follow it in the buffer
+     */
+    private static void checkRemaining(int inPos, int inEnd, int length) throws IOException {
+      if (inEnd - inPos < length) {
+        throw new IOException("LZ4 sequence runs past the end of the block");
+      }
+    }
+
+    private static int readIntBigEndian(ByteBuffer in, int pos) {
+      return (in.get(pos) & 0xFF) << 24 | (in.get(pos + 1) & 0xFF) << 16 | (in.get(pos + 2) & 0xFF) << 8
+        | in.get(pos + 3) & 0xFF;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+
+/**
+ * A {@link ByteBufferAllocator} that recycles buffers. Buffers come in power-of-two size classes from
+ * {@value #MIN_BUFFER_SIZE} bytes up to {@value #MAX_BUFFER_SIZE} bytes, enough for the 8 MB pieces a
+ * {@link org.apache.parquet.hadoop.ParquetFileReader} reads column chunks in; larger buffers aren't pooled. Up to
+ * {@code maxPooledBytes} of released buffers are kept for reuse, the rest are left to the garbage collector.
+ *
+ * Set it as the allocator of the read options and {@link ParquetConverter#getRecords} reads the column chunks and
+ * decompresses the pages into pooled buffers, returning them as soon as a row group has been decoded:
+ *
+ * <pre>
+ * ParquetReadOptions.builder().withAllocator(BufferPool.heap(BufferPool.DEFAULT_MAX_POOLED_BYTES)).build()
+ * </pre>
+ *
+ * parquet-mr doesn't release the buffers it allocates, so readers used otherwise allocate from the pool without
+ * giving anything back. The pool may be shared by concurrent readers.
+ */
+public class BufferPool implements ByteBufferAllocator {
+  public static final int MIN_BUFFER_SIZE = 4 * 1024;
+  public static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+  public static final long DEFAULT_MAX_POOLED_BYTES = 256L * 1024 * 1024;
+
+  private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+  private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE);
+
+  private final boolean direct;
+  private final long maxPooledBytes;
+  // released buffers by size class, the class of 2^(MIN_SHIFT + i) bytes at i
+  private final List<ArrayDeque<ByteBuffer>> free;
+  private long pooledBytes = 0;
+  private long allocatedBytes = 0;
+  private long reusedBytes = 0;
+
+  private BufferPool(boolean direct, long maxPooledBytes) {
+    this.direct = direct;
+    this.maxPooledBytes = maxPooledBytes;
+    this.free = new ArrayList<>(MAX_SHIFT - MIN_SHIFT + 1);
+    for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+      free.add(new ArrayDeque<>());
+    }
+  }
+
+  public static BufferPool heap(long maxPooledBytes) {
+    return new BufferPool(false, maxPooledBytes);
+  }
+
+  /**
+   * Direct buffers, which Snappy and ZSTD decompress into without copying. They are expensive to allocate and only
+   * freed by the garbage collector, so pooling them pays off most. The records of {@link ParquetConverter} are better
+   * read with a heap pool though: every string decoded from a direct buffer is copied into an array first.
+   */
+  public static BufferPool direct(long maxPooledBytes) {
+    return new BufferPool(true, maxPooledBytes);
+  }
+
+  /**
+   * @return a buffer with position 0 and limit {@code size}, its capacity may be larger
+   */
+  @Override
+  public ByteBuffer allocate(int size) {
+    final int sizeClass = sizeClass(size);
+    if (sizeClass < 0) {
+      synchronized (this) {
+        allocatedBytes += size;
+      }
+      return newBuffer(size);
+    }
+    ByteBuffer buffer;
+    synchronized (this) {
+      buffer = free.get(sizeClass).pollLast();
+      if (buffer != null) {
+        pooledBytes -= buffer.capacity();
+        reusedBytes += buffer.capacity();
+      } else {
+        allocatedBytes += MIN_BUFFER_SIZE << sizeClass;
+      }
+    }
+    if (buffer == null) {
+      buffer = newBuffer(MIN_BUFFER_SIZE << sizeClass);
+    }
+    buffer.clear();
+    buffer.limit(size);
+    return buffer;
+  }
+
+  /**
+   * Keeps the buffer for reuse. It must not be used anymore, nor any slice of it.
+   */
+  @Override
+  public void release(ByteBuffer buffer) {
+    final int capacity = buffer.capacity();
+    final int sizeClass = sizeClass(capacity);
+    // buffers of other allocators, larger than the classes or of another kind are left to the garbage collector
+    if (sizeClass < 0 || MIN_BUFFER_SIZE << sizeClass != capacity || buffer.isDirect() != direct) {
+      return;
+    }
+    synchronized (this) {
+      if (pooledBytes + capacity <= maxPooledBytes) {
+        free.get(sizeClass).addLast(buffer);
+        pooledBytes += capacity;
+      }
+    }
+  }
+
+  @Override
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * Bytes of the buffers held for reuse
+   */
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /**
+   * Bytes of the buffers created so far, the rest was served from the pool
+   */
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Bytes of the buffers served from the pool so far
+   */
+  public synchronized long getReusedBytes() {
+    return reusedBytes;
+  }
+
+  /**
+   * @return the index of the smallest class holding {@code size} bytes, -1 when larger than all classes
+   */
+  private static int sizeClass(int size) {
+    if (size > MAX_BUFFER_SIZE) {
+      return -1;
+    }
+    final int shift = size <= MIN_BUFFER_SIZE ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+    return shift - MIN_SHIFT;
+  }
+
+  private ByteBuffer newBuffer(int capacity) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+}
@@ -0,0 +1,36 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.parquet.crypto.DecryptionKeyRetriever;
+
+/**
+ * Remembers the keys returned by another retriever, by key metadata. Every {@link org.apache.parquet.hadoop.ParquetFileReader}
+ * sets up its decryptors from scratch and asks for the footer key and the key of every column it reads, and a file
+ * read in parallel has a reader per split, so without the cache a slow retriever, e.g. a KMS, is called again for
+ * every split of every file. Denied keys are not remembered.
+ */
+public class CachingKeyRetriever implements DecryptionKeyRetriever {
+  private final DecryptionKeyRetriever retriever;
+  private final ConcurrentMap<ByteBuffer, byte[]> keys = new ConcurrentHashMap<>();
+  private final AtomicLong retrievals = new AtomicLong();
+
+  public CachingKeyRetriever(DecryptionKeyRetriever retriever) {
+    this.retriever = retriever;
+  }
+
+  @Override
+  public byte[] getKey(byte[] keyMetaData) {
+    return keys.computeIfAbsent(ByteBuffer.wrap(keyMetaData.clone()), keyMetaDataCopy -> {
+      retrievals.incrementAndGet();
+      return retriever.getKey(keyMetaData);
+    });
+  }
+
+  /**
+   * Number of calls to the wrapped retriever
+   */
+  public long getRetrievals() {
+    return retrievals.get();
+  }
+}
@@ -0,0 +1,28 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the chunks written through a {@link ChunkedOutputFile}.
+ */
+public interface ChunkSink extends Closeable {
+  /**
+   * Receives the next chunk of the file; chunks arrive in file order on the writing thread. The buffer belongs to the
+   * output file's pool: {@code release} must be run exactly once, as soon as the bytes are no longer needed, and the
+   * buffer must not be touched afterwards. Sinks that hand the chunk to another thread release it from there.
+   *
+   * @param chunk  buffer holding the chunk
+   * @param length number of valid bytes at the start of the buffer
+   */
+  void write(byte[] chunk, int length, Runnable release) throws IOException;
+
+  /**
+   * Called once after the last chunk; completes the file.
+   */
+  @Override
+  void close() throws IOException;
+
+  /**
+   * Called instead of {@link #close()} when the file can't be completed; discards what was written.
+   */
+  void abort() throws IOException;
+}
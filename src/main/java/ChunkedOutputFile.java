@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * Bounded-memory {@link OutputFile}. Bytes are buffered in a bounded pool of chunk buffers, every chunk is handed to a
+ * {@link ChunkSink} (a local file, an upload, ...) as soon as it fills, and the writer blocks while all buffers are
+ * held by the sink. Buffers are allocated when no released one is free, so a sink releasing every chunk before it
+ * returns, as {@link FileChunkSink}, only ever uses one. Peak heap is at most {@code chunkSize * poolSize} regardless
+ * of the file size, unlike {@link InMemoryOutputFile}.
+ */
+public class ChunkedOutputFile implements OutputFile {
+  public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  public static final int DEFAULT_POOL_SIZE = 4;
+
+  private final ChunkSink sink;
+  private final int chunkSize;
+  private final int poolSize;
+  // released chunks, the first ones are allocated as they are needed
+  private final BlockingQueue<byte[]> pool;
+  private int allocatedChunks = 0;
+  private ChunkedPositionOutputStream stream = null;
+
+  public ChunkedOutputFile(ChunkSink sink) {
+    this(sink, DEFAULT_CHUNK_SIZE, DEFAULT_POOL_SIZE);
+  }
+
+  public ChunkedOutputFile(ChunkSink sink, int chunkSize, int poolSize) {
+    this.sink = sink;
+    this.chunkSize = chunkSize;
+    this.poolSize = poolSize;
+    this.pool = new ArrayBlockingQueue<>(poolSize);
+  }
+
+  @Override
+  public PositionOutputStream create(long blockSizeHint) throws IOException {
+    if (stream != null) {
+      throw new FileAlreadyExistsException(sink.toString());
+    }
+    return createOrOverwrite(blockSizeHint);
+  }
+
+  /**
+   * Starts the file over. Only possible as long as no chunk has been handed to the sink.
+   */
+  @Override
+  public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+    if (stream != null) {
+      if (stream.closed || stream.aborted || stream.failed) {
+        throw new IOException("Cannot overwrite, output to " + sink + " was already "
+          + (stream.closed ? "closed" : stream.aborted ? "aborted" : "failed"));
+      }
+      if (stream.chunksWritten > 0) {
+        throw new IOException("Cannot overwrite, " + stream.chunksWritten + " chunks were already written to " + sink);
+      }
+      stream.position = 0;
+      return stream;
+    }
+    stream = new ChunkedPositionOutputStream(takeChunk());
+    return stream;
+  }
+
+  /**
+   * Chunks have no block structure to align row groups to
+   */
+  @Override
+  public boolean supportsBlockSize() {
+    return false;
+  }
+
+  @Override
+  public long defaultBlockSize() {
+    return ParquetWriter.DEFAULT_BLOCK_SIZE;
+  }
+
+  /**
+   * Discards the file: the sink is aborted instead of completed, and further writes fail. Used when writing fails
+   * part way, so that closing the Parquet writer doesn't publish a truncated file.
+   */
+  public void abort() throws IOException {
+    if (stream != null && stream.closed) {
+      return;
+    }
+    if (stream != null) {
+      stream.aborted = true;
+    }
+    sink.abort();
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  private byte[] takeChunk() throws IOException {
+    final byte[] released = pool.poll();
+    if (released != null) {
+      return released;
+    }
+    if (allocatedChunks < poolSize) {
+      allocatedChunks++;
+      return new byte[chunkSize];
+    }
+    try {
+      return pool.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a free chunk");
+    }
+  }
+
+  private class ChunkedPositionOutputStream extends PositionOutputStream {
+    private byte[] chunk;
+    private int position = 0;
+    private long flushedBytes = 0;
+    private int chunksWritten = 0;
+    private boolean closed = false;
+    private boolean aborted = false;
+    // a chunk couldn't be handed to the sink, the file is incomplete
+    private boolean failed = false;
+
+    private ChunkedPositionOutputStream(byte[] chunk) {
+      this.chunk = chunk;
+    }
+
+    @Override
+    public long getPos() {
+      return flushedBytes + position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (chunk == null || position == chunk.length) {
+        writeChunk();
+      }
+      chunk[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (chunk == null || position == chunk.length) {
+          writeChunk();
+        }
+        final int count = Math.min(len, chunk.length - position);
+        System.arraycopy(b, off, chunk, position, count);
+        position += count;
+        off += count;
+        len -= count;
+      }
+    }
+
+    private void writeChunk() throws IOException {
+      if (aborted) {
+        throw new IOException("Output to " + sink + " was aborted");
+      }
+      if (failed || closed) {
+        throw new IOException("Output to " + sink + " was already " + (failed ? "failed" : "closed"));
+      }
+      final byte[] full = chunk;
+      chunk = null;
+      try {
+        // the sink releases the chunk even if it fails
+        sink.write(full, position, () -> pool.add(full));
+        flushedBytes += position;
+        chunksWritten++;
+        position = 0;
+        chunk = takeChunk();
+      } catch (IOException | RuntimeException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (aborted || failed) {
+        if (chunk != null) {
+          pool.add(chunk);
+          chunk = null;
+        }
+        if (!aborted) {
+          // not completing the sink is not enough, the chunks it already has must be discarded
+          aborted = true;
+          sink.abort();
+          throw new IOException("Output to " + sink + " failed, it was aborted");
+        }
+        return;
+      }
+      final byte[] last = chunk;
+      chunk = null;
+      if (position > 0) {
+        try {
+          sink.write(last, position, () -> pool.add(last));
+        } catch (IOException | RuntimeException e) {
+          // completing the sink now would publish a truncated file
+          failed = true;
+          aborted = true;
+          try {
+            sink.abort();
+          } catch (IOException abortFailure) {
+            e.addSuppressed(abortFailure);
+          }
+          throw e;
+        }
+        flushedBytes += position;
+        chunksWritten++;
+        position = 0;
+      } else {
+        pool.add(last);
+      }
+      sink.close();
+    }
+  }
+}
@@ -0,0 +1,370 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DataPageV1;
+import org.apache.parquet.column.page.DataPageV2;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+/**
+ * Picks the compression codec of an export from a sample of its records. The sample is encoded into uncompressed
+ * pages as the export would be, then the pages of every column are compressed and decompressed with each candidate
+ * codec. The codec with the lowest estimated time wins: compressing, shipping the compressed bytes at the
+ * destination's bandwidth, and decompressing them once per downstream read. A slow upload favours small files, a fast
+ * local disk favours cheap codecs.
+ *
+ * parquet-mr writes every column of a file with the same codec, so the file codec is the one with the lowest time
+ * summed over all columns; the best codec of each column alone is reported by {@link Selection#getColumnCodecs()}.
+ * ZSTD and GZIP levels can't be chosen per file either: parquet-mr keeps one codec instance per JVM, configured by
+ * the first writer ({@code parquet.compression.codec.zstd.level}).
+ *
+ * <pre>
+ * CodecSelector.forBandwidth(50 * 1024 * 1024).withReads(10)
+ * </pre>
+ */
+public class CodecSelector {
+  /**
+   * The codecs this build can write without Hadoop native codecs: snappy-java and zstd-jni bundle their own JNI
+   * libraries and GZIP falls back to the JDK's zlib, while LZ4, LZO and BROTLI need libhadoop or extra codec jars
+   */
+  public static final List<CompressionCodecName> DEFAULT_CANDIDATES = Collections.unmodifiableList(Arrays.asList(
+    CompressionCodecName.UNCOMPRESSED, CompressionCodecName.SNAPPY, CompressionCodecName.GZIP,
+    CompressionCodecName.ZSTD));
+  public static final int DEFAULT_SAMPLE_ROWS = 10000;
+
+  private final double bytesPerSecond;
+  private double reads = 1;
+  private int sampleRows = DEFAULT_SAMPLE_ROWS;
+  private List<CompressionCodecName> candidates = DEFAULT_CANDIDATES;
+
+  private CodecSelector(double bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * @param bytesPerSecond throughput of the destination, e.g. the upload bandwidth
+   */
+  public static CodecSelector forBandwidth(double bytesPerSecond) {
+    if (bytesPerSecond <= 0) {
+      throw new IllegalArgumentException("Bandwidth must be positive, got " + bytesPerSecond);
+    }
+    return new CodecSelector(bytesPerSecond);
+  }
+
+  /**
+   * How many times every file is expected to be read downstream, 1 by default. Decompression time is counted once
+   * per read, 0 leaves it out.
+   */
+  public CodecSelector withReads(double reads) {
+    if (!(reads >= 0)) {
+      throw new IllegalArgumentException("Reads must not be negative, got " + reads);
+    }
+    this.reads = reads;
+    return this;
+  }
+
+  /**
+   * Records sampled from the start of the export, {@value #DEFAULT_SAMPLE_ROWS} by default
+   */
+  public CodecSelector withSampleRows(int sampleRows) {
+    if (sampleRows <= 0) {
+      throw new IllegalArgumentException("Sample rows must be positive, got " + sampleRows);
+    }
+    this.sampleRows = sampleRows;
+    return this;
+  }
+
+  public CodecSelector withCandidates(CompressionCodecName... candidates) {
+    this.candidates = Collections.unmodifiableList(Arrays.asList(candidates));
+    return this;
+  }
+
+  public int getSampleRows() {
+    return sampleRows;
+  }
+
+  /**
+   * Measures the candidates on the sample. Every page is compressed and decompressed twice and the faster run is
+   * counted, which leaves out most of the JIT warm-up and GC pauses. An empty sample, e.g. of an empty export, has
+   * nothing to measure and selects {@link LoadParquet#DEFAULT_CODEC}.
+   */
+  public Selection select(Schema avroSchema, List<GenericRecord> sample) throws IOException {
+    if (sample.isEmpty()) {
+      return new Selection(Collections.emptyList());
+    }
+    final Map<String, List<byte[]>> pages = encode(avroSchema, sample);
+    final CodecFactory codecs = new CodecFactory(new Configuration(), LoadParquet.PAGE_SIZE);
+    try {
+      return new Selection(measure(codecs, pages));
+    } finally {
+      codecs.release();
+    }
+  }
+
+  /**
+   * Uncompressed page bodies of the sample, dictionary pages included, by dotted column path
+   */
+  private static Map<String, List<byte[]>> encode(Schema avroSchema, List<GenericRecord> sample) throws IOException {
+    final InMemoryOutputFile outputFile = new InMemoryOutputFile();
+    try (ParquetWriter<Object> writer = LoadParquet.newWriter(outputFile, avroSchema, null,
+      CompressionCodecName.UNCOMPRESSED)) {
+      for (GenericRecord record : sample) {
+        writer.write(record);
+      }
+    }
+    final Map<String, List<byte[]>> pages = new LinkedHashMap<>();
+    try (ParquetFileReader reader = ParquetFileReader.open(new ByteArrayInputFile(outputFile.toArray()))) {
+      final List<ColumnDescriptor> columns = reader.getFileMetaData().getSchema().getColumns();
+      PageReadStore rowGroup;
+      while ((rowGroup = reader.readNextRowGroup()) != null) {
+        for (ColumnDescriptor column : columns) {
+          final List<byte[]> columnPages = pages.computeIfAbsent(String.join(".", column.getPath()),
+            path -> new ArrayList<>());
+          final PageReader pageReader = rowGroup.getPageReader(column);
+          final DictionaryPage dictionary = pageReader.readDictionaryPage();
+          if (dictionary != null) {
+            columnPages.add(dictionary.getBytes().toByteArray());
+          }
+          DataPage page;
+          while ((page = pageReader.readPage()) != null) {
+            columnPages.add(page.accept(new DataPage.Visitor<byte[]>() {
+              @Override
+              public byte[] visit(DataPageV1 dataPageV1) {
+                return toByteArray(dataPageV1.getBytes());
+              }
+
+              @Override
+              public byte[] visit(DataPageV2 dataPageV2) {
+                return toByteArray(dataPageV2.getData());
+              }
+            }));
+          }
+        }
+      }
+    }
+    return pages;
+  }
+
+  private List<Measurement> measure(CodecFactory codecs, Map<String, List<byte[]>> pages) throws IOException {
+    final List<Measurement> measurements = new ArrayList<>();
+    for (CompressionCodecName codec : candidates) {
+      final CompressionCodecFactory.BytesInputCompressor compressor = codecs.getCompressor(codec);
+      final CompressionCodecFactory.BytesInputDecompressor decompressor = codecs.getDecompressor(codec);
+      for (Map.Entry<String, List<byte[]>> column : pages.entrySet()) {
+        long uncompressedBytes = 0;
+        long compressedBytes = 0;
+        long compressNanos = 0;
+        long decompressNanos = 0;
+        for (byte[] page : column.getValue()) {
+          byte[] compressed = null;
+          long pageCompressNanos = Long.MAX_VALUE;
+          long pageDecompressNanos = Long.MAX_VALUE;
+          for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            compressed = compressor.compress(BytesInput.from(page)).toByteArray();
+            pageCompressNanos = Math.min(pageCompressNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            decompressor.decompress(BytesInput.from(compressed), page.length).toByteArray();
+            pageDecompressNanos = Math.min(pageDecompressNanos, System.nanoTime() - start);
+          }
+          compressNanos += pageCompressNanos;
+          decompressNanos += pageDecompressNanos;
+          uncompressedBytes += page.length;
+          compressedBytes += compressed.length;
+        }
+        measurements.add(new Measurement(column.getKey(), codec, uncompressedBytes, compressedBytes, compressNanos,
+          decompressNanos));
+      }
+    }
+    return measurements;
+  }
+
+  private static byte[] toByteArray(BytesInput bytes) {
+    try {
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Page bytes of an in-memory file", e);
+    }
+  }
+
+  /**
+   * One codec on the sampled pages of one column
+   */
+  public class Measurement {
+    private final String column;
+    private final CompressionCodecName codec;
+    private final long uncompressedBytes;
+    private final long compressedBytes;
+    private final long compressNanos;
+    private final long decompressNanos;
+
+    private Measurement(String column, CompressionCodecName codec, long uncompressedBytes, long compressedBytes,
+      long compressNanos, long decompressNanos) {
+      this.column = column;
+      this.codec = codec;
+      this.uncompressedBytes = uncompressedBytes;
+      this.compressedBytes = compressedBytes;
+      this.compressNanos = compressNanos;
+      this.decompressNanos = decompressNanos;
+    }
+
+    /**
+     * Dotted path of the leaf column
+     */
+    public String getColumn() {
+      return column;
+    }
+
+    public CompressionCodecName getCodec() {
+      return codec;
+    }
+
+    public long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    public long getCompressNanos() {
+      return compressNanos;
+    }
+
+    public long getDecompressNanos() {
+      return decompressNanos;
+    }
+
+    /**
+     * Estimated time spent on the sampled pages: compression, transfer and the downstream decompressions, in nanos
+     */
+    public double getCost() {
+      return compressNanos + compressedBytes * 1e9 / bytesPerSecond + reads * decompressNanos;
+    }
+  }
+
+  /**
+   * The outcome of {@link #select}
+   */
+  public static class Selection {
+    private final List<Measurement> measurements;
+    private final CompressionCodecName codec;
+    private final Map<String, CompressionCodecName> columnCodecs = new LinkedHashMap<>();
+
+    private Selection(List<Measurement> measurements) {
+      this.measurements = Collections.unmodifiableList(measurements);
+      final Map<CompressionCodecName, Double> costs = new EnumMap<>(CompressionCodecName.class);
+      final Map<String, Measurement> bestOfColumns = new LinkedHashMap<>();
+      for (Measurement measurement : measurements) {
+        costs.merge(measurement.getCodec(), measurement.getCost(), Double::sum);
+        bestOfColumns.merge(measurement.getColumn(), measurement,
+          (best, other) -> other.getCost() < best.getCost() ? other : best);
+      }
+      // nothing measured, without candidates or pages
+      this.codec = costs.isEmpty() ? LoadParquet.DEFAULT_CODEC
+        : Collections.min(costs.entrySet(), Map.Entry.comparingByValue()).getKey();
+      bestOfColumns.forEach((column, best) -> columnCodecs.put(column, best.getCodec()));
+    }
+
+    /**
+     * The codec to write the file with
+     */
+    public CompressionCodecName getCodec() {
+      return codec;
+    }
+
+    /**
+     * The best codec of every column on its own, by dotted path
+     */
+    public Map<String, CompressionCodecName> getColumnCodecs() {
+      return Collections.unmodifiableMap(columnCodecs);
+    }
+
+    public List<Measurement> getMeasurements() {
+      return measurements;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder builder = new StringBuilder(codec.name());
+      final Map<CompressionCodecName, long[]> totals = new EnumMap<>(CompressionCodecName.class);
+      for (Measurement measurement : measurements) {
+        final long[] total = totals.computeIfAbsent(measurement.getCodec(), c -> new long[4]);
+        total[0] += measurement.getUncompressedBytes();
+        total[1] += measurement.getCompressedBytes();
+        total[2] += measurement.getCompressNanos();
+        total[3] += measurement.getDecompressNanos();
+      }
+      totals.forEach((candidate, total) -> builder.append(String.format(", %s %.2fx %dus/%dus", candidate,
+        (double) total[0] / Math.max(total[1], 1), total[2] / 1000, total[3] / 1000)));
+      return builder.toString();
+    }
+  }
+
+  /**
+   * Reads the sample back from memory
+   */
+  private static class ByteArrayInputFile implements InputFile {
+    private final byte[] bytes;
+
+    private ByteArrayInputFile(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public long getLength() {
+      return bytes.length;
+    }
+
+    @Override
+    public SeekableInputStream newStream() {
+      final SeekableByteArrayInputStream in = new SeekableByteArrayInputStream(bytes);
+      return new DelegatingSeekableInputStream(in) {
+        @Override
+        public long getPos() {
+          return in.getPos();
+        }
+
+        @Override
+        public void seek(long newPos) {
+          in.seek(newPos);
+        }
+      };
+    }
+  }
+
+  private static class SeekableByteArrayInputStream extends ByteArrayInputStream {
+    private SeekableByteArrayInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    private long getPos() {
+      return pos;
+    }
+
+    private void seek(long newPos) {
+      pos = (int) newPos;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Values of one leaf column for a batch of rows read by {@link ColumnarBatchReader}.
+ *
+ * Every value slot has a definition and a repetition level. Slots whose definition level is below the column's max
+ * definition level are nulls (or empty lists) and carry no value. Values are decoded into the primitive array matching
+ * the column's physical type; BINARY, FIXED_LEN_BYTE_ARRAY and INT96 values are concatenated into {@link #getBytes()}
+ * with slot {@code i} spanning {@code offsets[i]} to {@code offsets[i + 1]}. Arrays are reused between batches and are
+ * only valid up to {@link #size()}.
+ */
+public class ColumnBatch {
+  private final ColumnDescriptor descriptor;
+  private final PrimitiveTypeName type;
+  private int size = 0;
+  private int rowCount = 0;
+  private int[] definitionLevels;
+  private int[] repetitionLevels;
+  private boolean[] booleans;
+  private int[] ints;
+  private long[] longs;
+  private float[] floats;
+  private double[] doubles;
+  private byte[] bytes;
+  private int[] offsets;
+  private long[] timestamps;
+  private final BytesWriter bytesWriter = new BytesWriter();
+
+  ColumnBatch(ColumnDescriptor descriptor, int capacity) {
+    this.descriptor = descriptor;
+    this.type = descriptor.getPrimitiveType().getPrimitiveTypeName();
+    this.definitionLevels = new int[capacity];
+    this.repetitionLevels = new int[capacity];
+    switch (type) {
+      case BOOLEAN:
+        booleans = new boolean[capacity];
+        break;
+      case INT32:
+        ints = new int[capacity];
+        break;
+      case INT64:
+        longs = new long[capacity];
+        break;
+      case FLOAT:
+        floats = new float[capacity];
+        break;
+      case DOUBLE:
+        doubles = new double[capacity];
+        break;
+      default:
+        bytes = new byte[capacity * 8];
+        offsets = new int[capacity + 1];
+    }
+  }
+
+  public ColumnDescriptor getDescriptor() {
+    return descriptor;
+  }
+
+  /**
+   * @return number of value slots in the batch, nulls included. Equals {@link #getRowCount()} for non-repeated columns
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public int[] getDefinitionLevels() {
+    return definitionLevels;
+  }
+
+  public int[] getRepetitionLevels() {
+    return repetitionLevels;
+  }
+
+  public boolean isNull(int slot) {
+    return definitionLevels[slot] < descriptor.getMaxDefinitionLevel();
+  }
+
+  public boolean[] getBooleans() {
+    return booleans;
+  }
+
+  public int[] getInts() {
+    return ints;
+  }
+
+  public long[] getLongs() {
+    return longs;
+  }
+
+  public float[] getFloats() {
+    return floats;
+  }
+
+  public double[] getDoubles() {
+    return doubles;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * Convenience accessor for binary slots. Wraps the batch buffer without copying, so the value is only valid until the
+   * next batch is read.
+   */
+  public Binary getBinary(int slot) {
+    return Binary.fromReusedByteArray(bytes, offsets[slot], offsets[slot + 1] - offsets[slot]);
+  }
+
+  /**
+   * Values of an INT96 column as timestamps since the Unix epoch, decoded in one pass over the batch, see
+   * {@link ParquetConverter.NanoTimeUtils#decode}. Nulls are 0. The array is reused between batches.
+   */
+  public long[] getInt96Timestamps(TimeUnit unit, boolean correctCorruptDates) {
+    if (type != PrimitiveTypeName.INT96) {
+      throw new IllegalStateException("Column " + Arrays.toString(descriptor.getPath()) + " is " + type + ", not INT96");
+    }
+    if (timestamps == null || timestamps.length < size) {
+      timestamps = new long[definitionLevels.length];
+    }
+    ParquetConverter.NanoTimeUtils.decode(bytes, offsets, size, timestamps, unit, correctCorruptDates);
+    return timestamps;
+  }
+
+  void reset() {
+    size = 0;
+    rowCount = 0;
+  }
+
+  void startRow() {
+    rowCount++;
+  }
+
+  /**
+   * Appends the levels of the next slot and returns its index
+   */
+  int addSlot(int repetitionLevel, int definitionLevel) {
+    if (size == definitionLevels.length) {
+      grow();
+    }
+    definitionLevels[size] = definitionLevel;
+    repetitionLevels[size] = repetitionLevel;
+    if (offsets != null) {
+      offsets[size + 1] = offsets[size];
+    }
+    return size++;
+  }
+
+  void setBoolean(int slot, boolean value) {
+    booleans[slot] = value;
+  }
+
+  void setInt(int slot, int value) {
+    ints[slot] = value;
+  }
+
+  void setLong(int slot, long value) {
+    longs[slot] = value;
+  }
+
+  void setFloat(int slot, float value) {
+    floats[slot] = value;
+  }
+
+  void setDouble(int slot, double value) {
+    doubles[slot] = value;
+  }
+
+  void setBinary(int slot, Binary value) {
+    final int length = value.length();
+    final int start = offsets[slot];
+    if (start + length > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + length));
+    }
+    bytesWriter.position = start;
+    try {
+      // copies straight out of the page or dictionary array the value is a slice of
+      value.writeTo(bytesWriter);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    offsets[slot + 1] = start + length;
+  }
+
+  private void grow() {
+    final int capacity = definitionLevels.length * 2;
+    definitionLevels = Arrays.copyOf(definitionLevels, capacity);
+    repetitionLevels = Arrays.copyOf(repetitionLevels, capacity);
+    switch (type) {
+      case BOOLEAN:
+        booleans = Arrays.copyOf(booleans, capacity);
+        break;
+      case INT32:
+        ints = Arrays.copyOf(ints, capacity);
+        break;
+      case INT64:
+        longs = Arrays.copyOf(longs, capacity);
+        break;
+      case FLOAT:
+        floats = Arrays.copyOf(floats, capacity);
+        break;
+      case DOUBLE:
+        doubles = Arrays.copyOf(doubles, capacity);
+        break;
+      default:
+        offsets = Arrays.copyOf(offsets, capacity + 1);
+    }
+  }
+
+  /**
+   * Writes into {@link #bytes} from {@link #position} on, which the caller has made room for
+   */
+  private class BytesWriter extends OutputStream {
+    private int position;
+
+    @Override
+    public void write(int b) {
+      bytes[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      System.arraycopy(b, off, bytes, position, len);
+      position += len;
+    }
+  }
+}
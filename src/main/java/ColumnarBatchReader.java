@@ -0,0 +1,162 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Reads a Parquet file column by column in batches of rows, decoding every column chunk of a {@link PageReadStore}
+ * straight into the primitive arrays of a {@link ColumnBatch}. Unlike {@link ParquetConverter#getRecords} no record
+ * objects are assembled, and the batch arrays are reused, so consumers that aggregate or export columns don't
+ * allocate per row.
+ *
+ * <pre>
+ * try (ColumnarBatchReader batches = new ColumnarBatchReader(reader)) {
+ *   while (batches.nextBatch()) {
+ *     long[] ids = batches.getColumn(0).getLongs();
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class ColumnarBatchReader implements Closeable {
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  private final ParquetFileReader reader;
+  private final MessageType schema;
+  private final int batchSize;
+  private final GroupConverter rootConverter;
+  private final List<ColumnBatch> columns = new ArrayList<>();
+  private final ColumnReader[] columnReaders;
+  // values of each column chunk not read yet, counted down from the value counts of its pages
+  private final long[] valuesLeft;
+  private long rowsLeftInRowGroup = 0;
+  private int rowCount = 0;
+
+  public ColumnarBatchReader(ParquetFileReader reader) {
+    this(reader, DEFAULT_BATCH_SIZE);
+  }
+
+  public ColumnarBatchReader(ParquetFileReader reader, int batchSize) {
+    this.reader = reader;
+    this.schema = reader.getFileMetaData().getSchema();
+    this.batchSize = batchSize;
+    // the converter is only needed to construct column readers, values are never written to it
+    this.rootConverter = new GroupRecordConverter(schema).getRootConverter();
+    for (ColumnDescriptor descriptor : schema.getColumns()) {
+      columns.add(new ColumnBatch(descriptor, batchSize));
+    }
+    this.columnReaders = new ColumnReader[columns.size()];
+    this.valuesLeft = new long[columns.size()];
+  }
+
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public List<ColumnBatch> getColumns() {
+    return Collections.unmodifiableList(columns);
+  }
+
+  public ColumnBatch getColumn(int index) {
+    return columns.get(index);
+  }
+
+  /**
+   * @return number of rows in the current batch
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Decodes the next batch of up to {@code batchSize} rows. Batches never span row groups.
+   *
+   * @return false once the file is exhausted
+   */
+  public boolean nextBatch() throws IOException {
+    while (rowsLeftInRowGroup == 0) {
+      if (!readRowGroup()) {
+        rowCount = 0;
+        return false;
+      }
+    }
+    rowCount = (int) Math.min(batchSize, rowsLeftInRowGroup);
+    for (int i = 0; i < columns.size(); i++) {
+      readColumn(i, rowCount);
+    }
+    rowsLeftInRowGroup -= rowCount;
+    return true;
+  }
+
+  private boolean readRowGroup() throws IOException {
+    final PageReadStore rowGroup = reader.readNextRowGroup();
+    if (rowGroup == null) {
+      return false;
+    }
+    final ColumnReadStoreImpl columnReadStore =
+      new ColumnReadStoreImpl(rowGroup, rootConverter, schema, reader.getFileMetaData().getCreatedBy());
+    for (int i = 0; i < columns.size(); i++) {
+      final ColumnDescriptor descriptor = columns.get(i).getDescriptor();
+      columnReaders[i] = columnReadStore.getColumnReader(descriptor);
+      valuesLeft[i] = rowGroup.getPageReader(descriptor).getTotalValueCount();
+    }
+    rowsLeftInRowGroup = rowGroup.getRowCount();
+    return true;
+  }
+
+  private void readColumn(int index, int rows) {
+    final ColumnBatch column = columns.get(index);
+    final ColumnReader columnReader = columnReaders[index];
+    final int maxDefinitionLevel = column.getDescriptor().getMaxDefinitionLevel();
+    column.reset();
+    while (valuesLeft[index] > 0) {
+      final int repetitionLevel = columnReader.getCurrentRepetitionLevel();
+      if (repetitionLevel == 0) {
+        // a new row starts here
+        if (column.getRowCount() == rows) {
+          return;
+        }
+        column.startRow();
+      }
+      final int definitionLevel = columnReader.getCurrentDefinitionLevel();
+      final int slot = column.addSlot(repetitionLevel, definitionLevel);
+      if (definitionLevel == maxDefinitionLevel) {
+        switch (column.getDescriptor().getPrimitiveType().getPrimitiveTypeName()) {
+          case BOOLEAN:
+            column.setBoolean(slot, columnReader.getBoolean());
+            break;
+          case INT32:
+            column.setInt(slot, columnReader.getInteger());
+            break;
+          case INT64:
+            column.setLong(slot, columnReader.getLong());
+            break;
+          case FLOAT:
+            column.setFloat(slot, columnReader.getFloat());
+            break;
+          case DOUBLE:
+            column.setDouble(slot, columnReader.getDouble());
+            break;
+          default:
+            column.setBinary(slot, columnReader.getBinary());
+        }
+      }
+      columnReader.consume();
+      valuesLeft[index]--;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,387 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.internal.hadoop.metadata.IndexReference;
+import org.apache.parquet.schema.PrimitiveType;
+
+/**
+ * Footer stored in primitive arrays instead of a {@link BlockMetaData} / {@link ColumnChunkMetaData} object graph:
+ * about a hundred bytes per column chunk, with min/max statistics packed into one off-heap buffer. Column paths and
+ * types are stored once, as all row groups have the same columns. Read it through the row group accessors and the
+ * {@link ColumnChunk} flyweight, or rebuild the parquet-mr metadata of some row groups for a reader with
+ * {@link #toParquetMetadata(int, int)}.
+ *
+ * Encoding stats are not kept, the dictionary filter then decides from the encodings of a column chunk alone.
+ */
+public class CompactFooter {
+  private static final CompressionCodecName[] CODECS = CompressionCodecName.values();
+  private static final Encoding[] ENCODINGS = Encoding.values();
+
+  private final FileMetaData fileMetaData;
+  private final ColumnPath[] paths;
+  private final PrimitiveType[] types;
+
+  // per row group
+  private final long[] rowCounts;
+  private final long[] totalByteSizes;
+  private final int[] ordinals;
+
+  // per column chunk, at rowGroup * columnCount + column
+  private final long[] firstDataPageOffsets;
+  private final long[] dictionaryPageOffsets;
+  private final long[] valueCounts;
+  private final long[] totalSizes;
+  private final long[] totalUncompressedSizes;
+  private final long[] nullCounts;
+  private final long[] columnIndexOffsets;
+  private final int[] columnIndexLengths;
+  private final long[] offsetIndexOffsets;
+  private final int[] offsetIndexLengths;
+  private final long[] bloomFilterOffsets;
+  private final int[] encodings;
+  private final byte[] codecs;
+  // min and max of a chunk are stored back to back from statisticsOffsets, -1 without min/max
+  private final int[] statisticsOffsets;
+  private final int[] minLengths;
+  private final int[] maxLengths;
+  private final ByteBuffer statistics;
+
+  /**
+   * Compacts the footer. Removed row groups, i.e. nulls left by {@link MutableParquetMetadata}, are skipped.
+   *
+   * @throws IllegalArgumentException when the row groups don't all have the same columns
+   */
+  public CompactFooter(ParquetMetadata footer) {
+    final List<BlockMetaData> blocks = new ArrayList<>();
+    for (BlockMetaData block : footer.getBlocks()) {
+      if (block != null) {
+        blocks.add(block);
+      }
+    }
+    this.fileMetaData = footer.getFileMetaData();
+    final List<ColumnChunkMetaData> firstColumns = blocks.isEmpty() ? new ArrayList<>() : blocks.get(0).getColumns();
+    final int columnCount = firstColumns.size();
+    this.paths = new ColumnPath[columnCount];
+    this.types = new PrimitiveType[columnCount];
+    for (int column = 0; column < columnCount; column++) {
+      paths[column] = firstColumns.get(column).getPath();
+      types[column] = firstColumns.get(column).getPrimitiveType();
+    }
+
+    final int rowGroupCount = blocks.size();
+    final int chunkCount = rowGroupCount * columnCount;
+    this.rowCounts = new long[rowGroupCount];
+    this.totalByteSizes = new long[rowGroupCount];
+    this.ordinals = new int[rowGroupCount];
+    this.firstDataPageOffsets = new long[chunkCount];
+    this.dictionaryPageOffsets = new long[chunkCount];
+    this.valueCounts = new long[chunkCount];
+    this.totalSizes = new long[chunkCount];
+    this.totalUncompressedSizes = new long[chunkCount];
+    this.nullCounts = new long[chunkCount];
+    this.columnIndexOffsets = new long[chunkCount];
+    this.columnIndexLengths = new int[chunkCount];
+    this.offsetIndexOffsets = new long[chunkCount];
+    this.offsetIndexLengths = new int[chunkCount];
+    this.bloomFilterOffsets = new long[chunkCount];
+    this.encodings = new int[chunkCount];
+    this.codecs = new byte[chunkCount];
+    this.statisticsOffsets = new int[chunkCount];
+    this.minLengths = new int[chunkCount];
+    this.maxLengths = new int[chunkCount];
+
+    final ByteArrayOutputStream statisticsBytes = new ByteArrayOutputStream();
+    for (int rowGroup = 0; rowGroup < rowGroupCount; rowGroup++) {
+      final BlockMetaData block = blocks.get(rowGroup);
+      rowCounts[rowGroup] = block.getRowCount();
+      totalByteSizes[rowGroup] = block.getTotalByteSize();
+      ordinals[rowGroup] = block.getOrdinal();
+      final List<ColumnChunkMetaData> columns = block.getColumns();
+      if (columns.size() != columnCount) {
+        throw new IllegalArgumentException("Row group " + rowGroup + " has " + columns.size() + " columns, expected " + columnCount);
+      }
+      for (int column = 0; column < columnCount; column++) {
+        final ColumnChunkMetaData chunk = columns.get(column);
+        if (!chunk.getPath().equals(paths[column])) {
+          throw new IllegalArgumentException("Row group " + rowGroup + " has column " + chunk.getPath() + " where "
+            + paths[column] + " was expected");
+        }
+        final int index = rowGroup * columnCount + column;
+        firstDataPageOffsets[index] = chunk.getFirstDataPageOffset();
+        dictionaryPageOffsets[index] = chunk.getDictionaryPageOffset();
+        valueCounts[index] = chunk.getValueCount();
+        totalSizes[index] = chunk.getTotalSize();
+        totalUncompressedSizes[index] = chunk.getTotalUncompressedSize();
+        codecs[index] = (byte) chunk.getCodec().ordinal();
+        for (Encoding encoding : chunk.getEncodings()) {
+          encodings[index] |= 1 << encoding.ordinal();
+        }
+        final IndexReference columnIndex = chunk.getColumnIndexReference();
+        columnIndexOffsets[index] = columnIndex == null ? -1 : columnIndex.getOffset();
+        columnIndexLengths[index] = columnIndex == null ? 0 : columnIndex.getLength();
+        final IndexReference offsetIndex = chunk.getOffsetIndexReference();
+        offsetIndexOffsets[index] = offsetIndex == null ? -1 : offsetIndex.getOffset();
+        offsetIndexLengths[index] = offsetIndex == null ? 0 : offsetIndex.getLength();
+        bloomFilterOffsets[index] = chunk.getBloomFilterOffset();
+
+        final Statistics<?> chunkStatistics = chunk.getStatistics();
+        nullCounts[index] = chunkStatistics.isNumNullsSet() ? chunkStatistics.getNumNulls() : -1;
+        if (chunkStatistics.hasNonNullValue()) {
+          final byte[] min = chunkStatistics.getMinBytes();
+          final byte[] max = chunkStatistics.getMaxBytes();
+          statisticsOffsets[index] = statisticsBytes.size();
+          minLengths[index] = min.length;
+          maxLengths[index] = max.length;
+          statisticsBytes.write(min, 0, min.length);
+          statisticsBytes.write(max, 0, max.length);
+        } else {
+          statisticsOffsets[index] = -1;
+        }
+      }
+    }
+    this.statistics = ByteBuffer.allocateDirect(statisticsBytes.size());
+    statistics.put(statisticsBytes.toByteArray());
+  }
+
+  public FileMetaData getFileMetaData() {
+    return fileMetaData;
+  }
+
+  public int getRowGroupCount() {
+    return rowCounts.length;
+  }
+
+  public int getColumnCount() {
+    return paths.length;
+  }
+
+  public ColumnPath getColumnPath(int column) {
+    return paths[column];
+  }
+
+  public PrimitiveType getColumnType(int column) {
+    return types[column];
+  }
+
+  public long getRowCount() {
+    long rowCount = 0;
+    for (long rows : rowCounts) {
+      rowCount += rows;
+    }
+    return rowCount;
+  }
+
+  public long getRowCount(int rowGroup) {
+    return rowCounts[rowGroup];
+  }
+
+  public long getTotalByteSize(int rowGroup) {
+    return totalByteSizes[rowGroup];
+  }
+
+  public int getOrdinal(int rowGroup) {
+    return ordinals[rowGroup];
+  }
+
+  /**
+   * Offset of the first page of the row group, as {@link BlockMetaData#getStartingPos()}
+   */
+  public long getStartingPos(int rowGroup) {
+    return getColumnCount() == 0 ? 0 : startingPos(rowGroup * getColumnCount());
+  }
+
+  /**
+   * Sum of the compressed sizes of the column chunks, as {@link BlockMetaData#getCompressedSize()}
+   */
+  public long getCompressedSize(int rowGroup) {
+    long size = 0;
+    for (int index = rowGroup * getColumnCount(); index < (rowGroup + 1) * getColumnCount(); index++) {
+      size += totalSizes[index];
+    }
+    return size;
+  }
+
+  /**
+   * Heap and off-heap bytes held by the arrays of this footer
+   */
+  public long getSizeInBytes() {
+    final long chunks = firstDataPageOffsets.length;
+    return rowCounts.length * (8L + 8 + 4) + chunks * (9L * 8 + 6 * 4 + 1) + statistics.capacity();
+  }
+
+  /**
+   * A cursor over the column chunks, positioned with {@link ColumnChunk#moveTo}. Cursors are cheap and not thread-safe,
+   * use one per thread.
+   */
+  public ColumnChunk newColumnChunk() {
+    return new ColumnChunk();
+  }
+
+  /**
+   * Rebuilds the parquet-mr metadata of the row groups in {@code [firstRowGroup, endRowGroup)}, e.g. for a reader of
+   * one split. The row group list is the caller's to modify.
+   */
+  public ParquetMetadata toParquetMetadata(int firstRowGroup, int endRowGroup) {
+    final List<BlockMetaData> blocks = new ArrayList<>(endRowGroup - firstRowGroup);
+    final ColumnChunk chunk = newColumnChunk();
+    for (int rowGroup = firstRowGroup; rowGroup < endRowGroup; rowGroup++) {
+      final BlockMetaData block = new BlockMetaData();
+      block.setRowCount(rowCounts[rowGroup]);
+      block.setTotalByteSize(totalByteSizes[rowGroup]);
+      block.setOrdinal(ordinals[rowGroup]);
+      for (int column = 0; column < getColumnCount(); column++) {
+        block.addColumn(chunk.moveTo(rowGroup, column).toColumnChunkMetaData());
+      }
+      blocks.add(block);
+    }
+    return new ParquetMetadata(fileMetaData, blocks);
+  }
+
+  public ParquetMetadata toParquetMetadata() {
+    return toParquetMetadata(0, getRowGroupCount());
+  }
+
+  private long startingPos(int index) {
+    final long dictionaryPageOffset = dictionaryPageOffsets[index];
+    // as ColumnChunkMetaData: a dictionary page offset of 0 or past the first data page means there is none
+    return dictionaryPageOffset > 0 && dictionaryPageOffset < firstDataPageOffsets[index]
+      ? dictionaryPageOffset : firstDataPageOffsets[index];
+  }
+
+  /**
+   * Flyweight view of one column chunk
+   */
+  public class ColumnChunk {
+    private int column;
+    private int index;
+
+    private ColumnChunk() {
+    }
+
+    public ColumnChunk moveTo(int rowGroup, int column) {
+      if (column < 0 || column >= getColumnCount() || rowGroup < 0 || rowGroup >= getRowGroupCount()) {
+        throw new IndexOutOfBoundsException("No column " + column + " in row group " + rowGroup);
+      }
+      this.column = column;
+      this.index = rowGroup * getColumnCount() + column;
+      return this;
+    }
+
+    public ColumnPath getPath() {
+      return paths[column];
+    }
+
+    public PrimitiveType getType() {
+      return types[column];
+    }
+
+    public CompressionCodecName getCodec() {
+      return CODECS[codecs[index]];
+    }
+
+    public Set<Encoding> getEncodings() {
+      final Set<Encoding> result = EnumSet.noneOf(Encoding.class);
+      for (Encoding encoding : ENCODINGS) {
+        if ((encodings[index] & (1 << encoding.ordinal())) != 0) {
+          result.add(encoding);
+        }
+      }
+      return result;
+    }
+
+    public long getStartingPos() {
+      return startingPos(index);
+    }
+
+    public long getFirstDataPageOffset() {
+      return firstDataPageOffsets[index];
+    }
+
+    public long getDictionaryPageOffset() {
+      return dictionaryPageOffsets[index];
+    }
+
+    public long getValueCount() {
+      return valueCounts[index];
+    }
+
+    public long getTotalSize() {
+      return totalSizes[index];
+    }
+
+    public long getTotalUncompressedSize() {
+      return totalUncompressedSizes[index];
+    }
+
+    /**
+     * @return -1 when unknown
+     */
+    public long getNullCount() {
+      return nullCounts[index];
+    }
+
+    public boolean hasMinMax() {
+      return statisticsOffsets[index] >= 0;
+    }
+
+    /**
+     * Plain encoded minimum, a read-only view of the off-heap statistics, or null without statistics
+     */
+    public ByteBuffer getMin() {
+      return hasMinMax() ? slice(statisticsOffsets[index], minLengths[index]) : null;
+    }
+
+    public ByteBuffer getMax() {
+      return hasMinMax() ? slice(statisticsOffsets[index] + minLengths[index], maxLengths[index]) : null;
+    }
+
+    public Statistics<?> getStatistics() {
+      final Statistics.Builder builder = Statistics.getBuilderForReading(types[column]);
+      if (hasMinMax()) {
+        builder.withMin(bytes(getMin())).withMax(bytes(getMax()));
+      }
+      if (nullCounts[index] >= 0) {
+        builder.withNumNulls(nullCounts[index]);
+      }
+      return builder.build();
+    }
+
+    public ColumnChunkMetaData toColumnChunkMetaData() {
+      final ColumnChunkMetaData chunk = ColumnChunkMetaData.get(paths[column], types[column], getCodec(), null, getEncodings(),
+        getStatistics(), firstDataPageOffsets[index], dictionaryPageOffsets[index], valueCounts[index], totalSizes[index],
+        totalUncompressedSizes[index]);
+      if (columnIndexOffsets[index] >= 0) {
+        chunk.setColumnIndexReference(new IndexReference(columnIndexOffsets[index], columnIndexLengths[index]));
+      }
+      if (offsetIndexOffsets[index] >= 0) {
+        chunk.setOffsetIndexReference(new IndexReference(offsetIndexOffsets[index], offsetIndexLengths[index]));
+      }
+      chunk.setBloomFilterOffset(bloomFilterOffsets[index]);
+      return chunk;
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+      final ByteBuffer view = statistics.asReadOnlyBuffer();
+      view.limit(offset + length);
+      view.position(offset);
+      return view.slice();
+    }
+
+    private byte[] bytes(ByteBuffer buffer) {
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Spills the chunks of a {@link ChunkedOutputFile} to a local file as soon as they fill.
+ */
+public class FileChunkSink implements ChunkSink {
+  private final Path path;
+  private final FileChannel channel;
+
+  public FileChunkSink(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Spills to a new temp file, the caller is responsible for deleting it
+   */
+  public static FileChunkSink createTempFile(String prefix) throws IOException {
+    return new FileChunkSink(Files.createTempFile(prefix, ".parquet"));
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public void write(byte[] chunk, int length, Runnable release) throws IOException {
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } finally {
+      release.run();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  @Override
+  public void abort() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+}
@@ -0,0 +1,129 @@
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+
+/**
+ * Caches parsed footers, trimmed to the columns a reader asked for, so that repeated reads of the same files skip
+ * reading and parsing the footer. Entries are keyed by path, length and modification time, a rewritten file is read
+ * again. Eviction is least recently used within a budget on the estimated heap size of the cached footers.
+ */
+public class FooterCache {
+  public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+  private final Cache<Key, MutableParquetMetadata> cache;
+
+  public FooterCache() {
+    this(DEFAULT_MAX_WEIGHT);
+  }
+
+  /**
+   * @param maxWeight budget on the estimated heap size of the cached footers, in bytes
+   */
+  public FooterCache(long maxWeight) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxWeight)
+      .weigher((Key key, MutableParquetMetadata footer) -> (int) Math.min(Integer.MAX_VALUE, footer.getEstimatedHeapSize()))
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Opens a reader over a cached footer. The footer is trimmed with
+   * {@link MutableParquetMetadata#removeUnneededColumns} to the given top-level columns, all columns are kept when
+   * {@code columns} is null. Project the reader to the same columns, e.g. with
+   * {@link ParquetConverter#getRecords(ParquetFileReader, Set)}.
+   */
+  // parquet-mr 1.12 only takes a footer through the deprecated (Configuration, Path, ParquetMetadata) constructor, the
+  // InputFile ones read the footer again
+  @SuppressWarnings("deprecation")
+  public ParquetFileReader open(Configuration conf, Path path, Set<String> columns) throws IOException {
+    final FileStatus status = path.getFileSystem(conf).getFileStatus(path);
+    return new ParquetFileReader(conf, status.getPath(), getFooter(conf, status, columns).toParquetMetadata());
+  }
+
+  public MutableParquetMetadata getFooter(Configuration conf, FileStatus status, Set<String> columns) throws IOException {
+    final Set<String> lowerCaseColumns = columns == null ? null
+      : Collections.unmodifiableSet(columns.stream().map(String::toLowerCase).collect(Collectors.toSet()));
+    final Key key = new Key(status.getPath().toString(), status.getLen(), status.getModificationTime(), lowerCaseColumns);
+    try {
+      return cache.get(key, () -> {
+        final MutableParquetMetadata footer;
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(status, conf))) {
+          footer = new MutableParquetMetadata(reader.getFooter());
+        }
+        if (lowerCaseColumns != null) {
+          footer.removeUnneededColumns(lowerCaseColumns);
+        }
+        return footer;
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to read the footer of " + status.getPath(), e.getCause());
+    }
+  }
+
+  /**
+   * Hit, miss and eviction counts since the cache was created
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public String toString() {
+    return "FooterCache{size=" + size() + ", " + getStats() + "}";
+  }
+
+  private static class Key {
+    private final String path;
+    private final long length;
+    private final long modificationTime;
+    private final Set<String> columns;
+
+    private Key(String path, long length, long modificationTime, Set<String> columns) {
+      this.path = path;
+      this.length = length;
+      this.modificationTime = modificationTime;
+      this.columns = columns;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) o;
+      return length == key.length && modificationTime == key.modificationTime && path.equals(key.path)
+        && Objects.equals(columns, key.columns);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, length, modificationTime, columns);
+    }
+  }
+}
@@ -1,3 +1,4 @@
+import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.io.DelegatingPositionOutputStream;
 import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.io.PositionOutputStream;
@@ -16,7 +17,8 @@ public class InMemoryOutputFile implements OutputFile {
 
   @Override
   public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
-    return null;
+    baos.reset();
+    return create(blockSizeHint);
   }
 
   @Override
@@ -26,7 +28,7 @@ public class InMemoryOutputFile implements OutputFile {
 
   @Override
   public long defaultBlockSize() {
-    return 0;
+    return ParquetWriter.DEFAULT_BLOCK_SIZE;
   }
 
   public byte[] toArray() {
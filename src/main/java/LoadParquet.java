@@ -1,3 +1,4 @@
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.transfer.TransferManager;
@@ -6,9 +7,13 @@ import com.amazonaws.services.s3.transfer.Upload;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.apache.avro.Schema;
 import org.apache.avro.data.TimeConversions;
 import org.apache.avro.file.DataFileReader;
@@ -18,19 +23,25 @@ import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
+import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.avro.AvroParquetWriter;
-import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.crypto.DecryptionKeyRetriever;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
-import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.OutputFile;
+import org.eclipse.collections.api.multimap.list.ListMultimap;
 
 public class LoadParquet {
 
   public static final DatumReader<GenericRecord> DATUM_READER = new GenericDatumReader<>();
   public static final GenericData GENERIC_DATA = GenericData.get();
 
+  static {
+    // registered once, writers on several threads share the data model
+    GENERIC_DATA.addLogicalTypeConversion(new TimeConversions.DateConversion());
+  }
+
   public static void main(String[] args) throws IOException, InterruptedException {
 //    final String avroFile = args[0];
 //    final String bucket = args[1];
@@ -41,23 +52,90 @@ public class LoadParquet {
 //    readParquet("custom2_after_tamr_export");
 //    writeAvroToParquet("/Users/hisingh1/projects/export-parquet/custom.avro","tamr-core-connect-test", "export/custom.parquet");
 //    writeAvroToParquet("/Users/hisingh1/projects/export-parquet/arrays.avro","tamr-core-connect-test", "export/arrays.parquet");
+//    ParallelAvroToParquet.writeToParquet(new File("/Users/hisingh1/projects/export-parquet/custom.avro"),
+//      new ChunkedOutputFile(new FileChunkSink(Paths.get("./export/custom.parquet"))), Runtime.getRuntime().availableProcessors());
+//    uploadAvroAsParquet("/Users/hisingh1/projects/export-parquet/custom.avro", s3Client(), "tamr-core-connect-test", "export/custom.parquet");
     writeAvroToParquet("/Users/hisingh1/projects/export-parquet/CUSTOMER_LEGAL_MASTERING_unified_dataset_dedup_published_clusters_with_data.avro","tamr-core-connect-test", "export/CUSTOMER_LEGAL_MASTERING_unified_dataset_dedup_published_clusters_with_data.parquet");
 //    readParquet("arrays");
+//    readEncryptedParquet("encrypt_columns_and_footer", new LocalKeyRetriever()
+//      .withKey("kf", "0123456789012345".getBytes(StandardCharsets.US_ASCII))
+//      .withKey("kc1", "1234567890123450".getBytes(StandardCharsets.US_ASCII))
+//      .withKey("kc2", "1234567890123451".getBytes(StandardCharsets.US_ASCII)), null);
 
   }
 
   private static void readParquet(final String name) throws IOException {
-    ParquetConverter.getRecords(ParquetFileReader.open(
-      HadoopInputFile.fromPath(new Path("file:///Users/hisingh1/projects/export-parquet/parquet-variety/" + name + ".parquet"),
-        new Configuration()))).forEach(stringStringListMultimap -> System.out.println(stringStringListMultimap));
+    try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(
+      new LocalInputFile(Paths.get("/Users/hisingh1/projects/export-parquet/parquet-variety/" + name + ".parquet")), false)) {
+      records.forEach(stringStringListMultimap -> System.out.println(stringStringListMultimap));
+    }
+  }
+
+  /**
+   * Reads a file written with Parquet modular encryption, e.g. {@code readEncryptedParquet("uniform_encryption", keys, null)}
+   *
+   * @param aadPrefix the AAD prefix of files written without storing it, null otherwise
+   */
+  private static void readEncryptedParquet(final String name, final DecryptionKeyRetriever keys, final byte[] aadPrefix)
+    throws IOException {
+    final ParquetReadOptions options = ParquetReadOptions.builder()
+      .withDecryption(ParquetConverter.decryptionProperties(keys, aadPrefix))
+      .build();
+    try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(
+      new LocalInputFile(Paths.get("/Users/hisingh1/projects/export-parquet/parquet-variety/" + name + ".parquet.encrypted")),
+      options, false)) {
+      records.forEach(stringStringListMultimap -> System.out.println(stringStringListMultimap));
+    }
+  }
+
+  /**
+   * Uses the S3 endpoint from the {@code s3.endpoint} system property when set, e.g. a local S3-compatible stand-in,
+   * and the default AWS endpoint otherwise
+   */
+  public static AmazonS3 s3Client() {
+    final String endpoint = System.getProperty("s3.endpoint");
+    if (endpoint == null) {
+      return AmazonS3ClientBuilder.standard().build();
+    }
+    return AmazonS3ClientBuilder.standard()
+      .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, System.getProperty("s3.region", "us-east-1")))
+      .withPathStyleAccessEnabled(true)
+      .build();
+  }
+
+  /**
+   * Pipelined export: the Parquet file is uploaded chunk by chunk as a multipart upload while later row groups are
+   * still being encoded, so encoding and upload overlap and no local copy is written.
+   */
+  public static void uploadAvroAsParquet(final String avroFile, final AmazonS3 s3, final String bucket, final String path)
+    throws IOException {
+    uploadAvroAsParquet(avroFile, s3, bucket, path, null);
+  }
+
+  /**
+   * @param codecs picks the codec for the upload bandwidth, null for {@link #DEFAULT_CODEC}
+   */
+  public static void uploadAvroAsParquet(final String avroFile, final AmazonS3 s3, final String bucket, final String path,
+    final CodecSelector codecs) throws IOException {
+    final long start = System.nanoTime();
+    final ExecutorService executor = Executors.newFixedThreadPool(16);
+    final MultipartUploadSink sink = new MultipartUploadSink(s3, bucket, path, executor);
+    try (DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(new File(avroFile), DATUM_READER)) {
+      writeToParquet(dataFileReader, new ChunkedOutputFile(sink, ChunkedOutputFile.DEFAULT_CHUNK_SIZE, 8), null, codecs);
+    } finally {
+      executor.shutdownNow();
+    }
+    System.out.println("done uploading " + sink.getBytesWritten() + " bytes in " + sink.getPartCount() + " parts, "
+      + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms end to end");
   }
 
   private static void writeAvroToParquet(final String avroFile, final String bucket, final String path) throws IOException, InterruptedException {
+    final long start = System.nanoTime();
     DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(new File(avroFile), DATUM_READER);
 
-    final InMemoryOutputFile outputFile = writeToParquet(dataFileReader);
     final String file = "./" + path;
-    Files.write(Paths.get(file), outputFile.toArray());
+    // chunks are spilled to the file as they fill, so the export never sits in memory as a whole
+    writeToParquet(dataFileReader, new ChunkedOutputFile(new FileChunkSink(Paths.get(file))));
     final AmazonS3 s3 = AmazonS3ClientBuilder.standard().build();
     System.out.println("done writing file");
     TransferManager tm = TransferManagerBuilder.standard()
@@ -67,34 +145,113 @@ public class LoadParquet {
       .build();
     final Upload upload = tm.upload(bucket, path, new File(file));
     upload.waitForCompletion();
-    System.out.println("done");
+    System.out.println("done in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms end to end");
     tm.shutdownNow();
   }
 
   public static <T extends SpecificRecordBase> InMemoryOutputFile writeToParquet(DataFileReader<GenericRecord> dataFileReader) throws IOException {
-    Schema avroSchema = dataFileReader.getSchema();
-    GENERIC_DATA.addLogicalTypeConversion(new TimeConversions.DateConversion());
     InMemoryOutputFile outputFile = new InMemoryOutputFile();
+    try {
+      writeToParquet(dataFileReader, outputFile);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return outputFile;
+  }
+
+  public static void writeToParquet(DataFileReader<GenericRecord> dataFileReader, OutputFile outputFile) throws IOException {
+    writeToParquet(dataFileReader, outputFile, null);
+  }
+
+  /**
+   * Writes the file with Parquet modular encryption, or in plaintext when {@code encryption} is null
+   */
+  public static void writeToParquet(DataFileReader<GenericRecord> dataFileReader, OutputFile outputFile,
+    ParquetEncryption encryption) throws IOException {
+    writeToParquet(dataFileReader, outputFile, encryption, null);
+  }
+
+  /**
+   * Writes the file with the codec {@code codecs} picks from the first records, or with {@link #DEFAULT_CODEC} when
+   * {@code codecs} is null. The sampled records are held in memory until the writer is created.
+   */
+  public static void writeToParquet(DataFileReader<GenericRecord> dataFileReader, OutputFile outputFile,
+    ParquetEncryption encryption, CodecSelector codecs) throws IOException {
+    final List<GenericRecord> sample = new ArrayList<>();
+    CompressionCodecName codec = DEFAULT_CODEC;
+    if (codecs != null) {
+      while (sample.size() < codecs.getSampleRows() && dataFileReader.hasNext()) {
+        sample.add(dataFileReader.next());
+      }
+      codec = codecs.select(dataFileReader.getSchema(), sample).getCodec();
+    }
+    try (ParquetWriter<Object> writer = newWriter(outputFile, dataFileReader.getSchema(), encryption, codec)) {
+      try {
+        for (GenericRecord record : sample) {
+          writer.write(record);
+        }
+        sample.clear();
+        dataFileReader.iterator().forEachRemaining(r -> {
+          try {
+//          System.out.println(r);
+            writer.write(r);
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+      } catch (IOException | RuntimeException e) {
+        // don't let closing the writer complete a truncated file
+        abort(outputFile);
+        throw e;
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Column and offset indexes are written for every page, so the page size bounds how finely filtered reads can skip
+   * within a row group. Pages are cut at whichever limit is reached first.
+   */
+  public static final int PAGE_SIZE = ParquetWriter.DEFAULT_PAGE_SIZE;
+  public static final int PAGE_ROW_COUNT_LIMIT = 20000;
+  public static final CompressionCodecName DEFAULT_CODEC = CompressionCodecName.SNAPPY;
+
+  public static ParquetWriter<Object> newWriter(OutputFile outputFile, Schema avroSchema) throws IOException {
+    return newWriter(outputFile, avroSchema, null);
+  }
+
+  /**
+   * @param encryption encryption of the file, null for plaintext. Pages are encrypted as they are written, on the
+   *                   writer's thread.
+   */
+  public static ParquetWriter<Object> newWriter(OutputFile outputFile, Schema avroSchema, ParquetEncryption encryption)
+    throws IOException {
+    return newWriter(outputFile, avroSchema, encryption, DEFAULT_CODEC);
+  }
+
+  public static ParquetWriter<Object> newWriter(OutputFile outputFile, Schema avroSchema, ParquetEncryption encryption,
+    CompressionCodecName codec) throws IOException {
     Configuration conf = new Configuration();
     conf.setBoolean("parquet.avro.write-old-list-structure", false);
-    try (ParquetWriter<Object> writer = AvroParquetWriter.builder(outputFile)
+    return AvroParquetWriter.builder(outputFile)
       .withDataModel(GENERIC_DATA)
       .withSchema(avroSchema)
       .withConf(conf)
-      .withCompressionCodec(CompressionCodecName.SNAPPY)
+      .withCompressionCodec(codec)
+      .withPageSize(PAGE_SIZE)
+      .withPageRowCountLimit(PAGE_ROW_COUNT_LIMIT)
       .withWriteMode(ParquetFileWriter.Mode.CREATE)
-      .build()) {
-      dataFileReader.iterator().forEachRemaining(r -> {
-        try {
-//          System.out.println(r);
-          writer.write(r);
-        } catch (IOException ex) {
-          throw new UncheckedIOException(ex);
-        }
-      });
-    } catch (IOException e) {
-      e.printStackTrace();
+      .withEncryption(encryption == null ? null : encryption.newFileProperties())
+      .build();
+  }
+
+  /**
+   * Discards a partially written {@link ChunkedOutputFile}, other output files are left as they are
+   */
+  static void abort(OutputFile outputFile) throws IOException {
+    if (outputFile instanceof ChunkedOutputFile) {
+      ((ChunkedOutputFile) outputFile).abort();
     }
-    return outputFile;
   }
 }
@@ -0,0 +1,156 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+/**
+ * {@link InputFile} over a local file read with positional {@link FileChannel} reads, without the Hadoop file system
+ * layers of {@link org.apache.parquet.hadoop.util.HadoopInputFile}: no checksum files and no stream buffering, reads
+ * go from the page cache into the reader's buffer. Every stream opens a channel of its own, closed with the stream, so
+ * an idle LocalInputFile holds no file handle or mapping, and the readers of parallel splits don't share a position.
+ * The file must not change while it is read.
+ */
+public class LocalInputFile implements InputFile {
+  // the JDK reads into a heap buffer through a temporary direct buffer it caches per thread, as large as the read
+  private static final int MAX_HEAP_READ = 1024 * 1024;
+
+  private final Path path;
+  private volatile long length = -1;
+
+  public LocalInputFile(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    if (length < 0) {
+      length = Files.size(path);
+    }
+    return length;
+  }
+
+  @Override
+  public SeekableInputStream newStream() throws IOException {
+    return new ChannelInputStream(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  private class ChannelInputStream extends SeekableInputStream {
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+    private long position = 0;
+
+    private ChannelInputStream(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+    }
+
+    @Override
+    public long getPos() {
+      return position;
+    }
+
+    @Override
+    public void seek(long newPos) throws IOException {
+      if (newPos < 0 || newPos > size) {
+        throw new EOFException("Cannot seek to " + newPos + " in " + path + " of " + size + " bytes");
+      }
+      position = newPos;
+    }
+
+    @Override
+    public int read() throws IOException {
+      single.clear();
+      return read(single) <= 0 ? -1 : single.get(0) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int start, int len) throws IOException {
+      return read(ByteBuffer.wrap(bytes, start, len));
+    }
+
+    @Override
+    public int read(ByteBuffer buf) throws IOException {
+      if (!buf.hasRemaining()) {
+        return 0;
+      }
+      if (position >= size) {
+        return -1;
+      }
+      return readAt(buf);
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+      readFully(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int start, int len) throws IOException {
+      readFully(ByteBuffer.wrap(bytes, start, len));
+    }
+
+    @Override
+    public void readFully(ByteBuffer buf) throws IOException {
+      if (buf.remaining() > size - position) {
+        throw new EOFException("Reached the end of " + path + " with " + (size - position) + " of " + buf.remaining()
+          + " bytes left to read");
+      }
+      while (buf.hasRemaining()) {
+        if (readAt(buf) < 0) {
+          throw new EOFException("Reached the end of " + path + ", it was truncated while read");
+        }
+      }
+    }
+
+    @Override
+    public long skip(long n) {
+      final long skipped = Math.max(0, Math.min(n, size - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    /**
+     * Reads from the current position, at most {@link #MAX_HEAP_READ} bytes into a heap buffer
+     */
+    private int readAt(ByteBuffer buf) throws IOException {
+      final int limit = buf.limit();
+      if (!buf.isDirect() && buf.remaining() > MAX_HEAP_READ) {
+        buf.limit(buf.position() + MAX_HEAP_READ);
+      }
+      try {
+        final int count = channel.read(buf, position);
+        if (count > 0) {
+          position += count;
+        }
+        return count;
+      } finally {
+        buf.limit(limit);
+      }
+    }
+  }
+}
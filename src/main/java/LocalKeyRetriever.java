@@ -0,0 +1,49 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.parquet.crypto.DecryptionKeyRetriever;
+import org.apache.parquet.crypto.KeyAccessDeniedException;
+
+/**
+ * Keys of Parquet modular encryption held in memory, by key id. The key metadata of the footer and of the encrypted
+ * columns is the UTF-8 encoded key id, as in files written with explicit keys and {@code withFooterKeyID} /
+ * {@code withKeyID}. The same keys can encrypt exports, see {@link ParquetEncryption}.
+ *
+ * <pre>
+ * new LocalKeyRetriever()
+ *   .withKey("kf", footerKey)
+ *   .withKey("kc1", columnKey)
+ * </pre>
+ */
+public class LocalKeyRetriever implements DecryptionKeyRetriever, ParquetEncryption.KeyProvider {
+  private final Map<String, byte[]> keys = new ConcurrentHashMap<>();
+
+  public LocalKeyRetriever withKey(String keyId, byte[] key) {
+    if (key.length != 16 && key.length != 24 && key.length != 32) {
+      throw new IllegalArgumentException("Key " + keyId + " has " + key.length + " bytes, AES keys have 16, 24 or 32");
+    }
+    keys.put(keyId, key.clone());
+    return this;
+  }
+
+  /**
+   * @return null when there is no key with the id
+   */
+  @Override
+  public byte[] getKey(String keyId) {
+    return keys.get(keyId);
+  }
+
+  /**
+   * @throws KeyAccessDeniedException when there is no key with the id
+   */
+  @Override
+  public byte[] getKey(byte[] keyMetaData) {
+    final String keyId = new String(keyMetaData, StandardCharsets.UTF_8);
+    final byte[] key = getKey(keyId);
+    if (key == null) {
+      throw new KeyAccessDeniedException("No key with id " + keyId);
+    }
+    return key;
+  }
+}
@@ -4,15 +4,29 @@ import org.apache.parquet.io.api.Converter;
 import org.apache.parquet.io.api.GroupConverter;
 import org.apache.parquet.schema.GroupType;
 import org.apache.parquet.schema.Type;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 /**
- * First level of LOGICAL LIST conversion. Handles 'list'
+ * First level of LOGICAL LIST conversion. Handles 'list': every element puts its values into the record, lists of
+ * lists down to their leaves, and an empty list puts a null. The repeated group of a 3-level list is the second level,
+ * {@link ElementConverter}; in a legacy 2-level list the repeated field is the element itself.
  */
 public class LogicalListL1Converter extends GroupConverter  {
-  private static final Logger logger = LoggerFactory.getLogger(LogicalListL1Converter.class);
+  private final RecordConverter.ValueSink sink;
+  private final Converter elements;
+  private int valueCount;
+
+  LogicalListL1Converter(RecordPlan.Node list, RecordConverter.ValueSink sink) {
+    this.sink = sink;
+    final RecordConverter.ValueSink elementSink = value -> {
+      valueCount++;
+      sink.put(value);
+    };
+    final RecordPlan.Node element = list.getChildren()[0];
+    this.elements = list.isThreeLevelList() ? new ElementConverter(element, elementSink)
+      : RecordConverter.newConverter(element, elementSink);
+  }
+
   /**
    * Checks if the schema is similar to the following:
    * <pre>
@@ -40,16 +54,52 @@ public class LogicalListL1Converter extends GroupConverter  {
 
   @Override
   public Converter getConverter(final int fieldIndex) {
-    return null;
+    return elements;
   }
 
   @Override
   public void start() {
-
+    valueCount = 0;
   }
 
   @Override
   public void end() {
+    if (valueCount == 0) {
+      sink.put(null);
+    }
+  }
+
+  /**
+   * Second level, the repeated group wrapping one element. A null element puts a null.
+   */
+  private static class ElementConverter extends GroupConverter {
+    private final RecordConverter.ValueSink sink;
+    private final Converter element;
+    private boolean present;
 
+    private ElementConverter(RecordPlan.Node element, RecordConverter.ValueSink sink) {
+      this.sink = sink;
+      this.element = RecordConverter.newConverter(element, value -> {
+        present = true;
+        sink.put(value);
+      });
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return element;
+    }
+
+    @Override
+    public void start() {
+      present = false;
+    }
+
+    @Override
+    public void end() {
+      if (!present) {
+        sink.put(null);
+      }
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads every chunk of a {@link ChunkedOutputFile} as a part of an S3 multipart upload while the rest of the file
+ * is still being written. Parts are uploaded concurrently on the given executor and their buffers are released once
+ * the part is stored, so the output file's chunk pool also caps the number of parts in flight.
+ *
+ * S3 requires every part but the last to be at least {@value #MIN_PART_SIZE} bytes, so the output file's chunk size
+ * must be at least that large. Any S3-compatible endpoint works, see {@link LoadParquet#s3Client()}.
+ */
+public class MultipartUploadSink implements ChunkSink {
+  public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+  private final AmazonS3 s3;
+  private final String bucket;
+  private final String key;
+  private final ExecutorService executor;
+  private final List<Part> parts = new ArrayList<>();
+  private String uploadId = null;
+  private boolean aborted = false;
+  private int lastPartLength = 0;
+  private long bytesWritten = 0;
+
+  public MultipartUploadSink(AmazonS3 s3, String bucket, String key, ExecutorService executor) {
+    this.s3 = s3;
+    this.bucket = bucket;
+    this.key = key;
+    this.executor = executor;
+  }
+
+  @Override
+  public void write(byte[] chunk, int length, Runnable release) throws IOException {
+    try {
+      if (!parts.isEmpty() && lastPartLength < MIN_PART_SIZE) {
+        throw new IOException("Part " + parts.size() + " of s3://" + bucket + "/" + key + " is " + lastPartLength
+          + " bytes, only the last part may be smaller than " + MIN_PART_SIZE);
+      }
+      // fail fast instead of encoding the rest of the file when an upload already failed
+      for (Part part : parts) {
+        if (part.upload.isDone()) {
+          getPart(part.upload);
+        }
+      }
+      if (uploadId == null) {
+        uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId();
+      }
+    } catch (IOException | RuntimeException e) {
+      release.run();
+      throw e;
+    }
+    final int partNumber = parts.size() + 1;
+    lastPartLength = length;
+    bytesWritten += length;
+    final Part part = new Part(release);
+    try {
+      part.upload = executor.submit(() -> {
+        if (!part.started.compareAndSet(false, true)) {
+          // aborted before it got to run, the chunk was released by abort()
+          return null;
+        }
+        try {
+          return s3.uploadPart(new UploadPartRequest()
+            .withBucketName(bucket)
+            .withKey(key)
+            .withUploadId(uploadId)
+            .withPartNumber(partNumber)
+            .withInputStream(new ByteArrayInputStream(chunk, 0, length))
+            .withPartSize(length)).getPartETag();
+        } finally {
+          release.run();
+        }
+      });
+    } catch (RuntimeException e) {
+      release.run();
+      throw e;
+    }
+    parts.add(part);
+  }
+
+  /**
+   * Waits for the outstanding parts and completes the upload. The upload is aborted if a part failed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (aborted) {
+      return;
+    }
+    if (uploadId == null) {
+      s3.putObject(bucket, key, "");
+      return;
+    }
+    try {
+      final List<PartETag> eTags = new ArrayList<>();
+      for (Part part : parts) {
+        eTags.add(getPart(part.upload));
+      }
+      s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, eTags));
+    } catch (IOException | RuntimeException e) {
+      try {
+        abort();
+      } catch (RuntimeException abortFailure) {
+        e.addSuppressed(abortFailure);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Cancels the parts not started yet and releases their chunks, waits for the parts being uploaded, then discards
+   * the parts stored. A part completing after the abort would stay stored, and billed, until aborted again.
+   */
+  @Override
+  public void abort() {
+    aborted = true;
+    final List<Part> uploading = new ArrayList<>();
+    for (Part part : parts) {
+      if (part.started.compareAndSet(false, true)) {
+        part.upload.cancel(false);
+        part.release.run();
+      } else {
+        uploading.add(part);
+      }
+    }
+    boolean interrupted = false;
+    for (Part part : uploading) {
+      try {
+        part.upload.get();
+      } catch (InterruptedException e) {
+        // stop waiting, parts still being uploaded may be stored after the abort
+        interrupted = true;
+        break;
+      } catch (ExecutionException e) {
+        // a failed part has nothing to discard
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (uploadId != null) {
+      s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+      uploadId = null;
+    }
+  }
+
+  public int getPartCount() {
+    return parts.size();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  private PartETag getPart(Future<PartETag> part) throws IOException {
+    try {
+      return part.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading s3://" + bucket + "/" + key);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to upload a part of s3://" + bucket + "/" + key, e.getCause());
+    }
+  }
+
+  /**
+   * An upload of a chunk, which either the upload task or {@link #abort()} starts, so that its chunk is released
+   * exactly once
+   */
+  private static class Part {
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final Runnable release;
+    private Future<PartETag> upload;
+
+    private Part(Runnable release) {
+      this.release = release;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "s3://" + bucket + "/" + key;
+  }
+}
@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.internal.column.columnindex.OffsetIndexBuilder;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Avro to Parquet conversion on several threads. Avro container files are split into byte ranges; every worker syncs
+ * to the first block of its range and converts the blocks starting inside it with its own Avro decoder and
+ * {@link ParquetWriter}, so decoding, encoding and compression all run in parallel. Each worker buffers its own row
+ * group, so memory grows with the number of threads.
+ *
+ * Encrypted exports are written as encrypted parts with {@link #writeParts(File, Path, int, ParquetEncryption)}, each
+ * worker encrypting the pages of its part. They can't be stitched into one file: the AAD of every encrypted page
+ * binds it to its file and row group, so copied pages would no longer decrypt.
+ */
+public class ParallelAvroToParquet {
+
+  /**
+   * Converts the Avro file into one Parquet part file per thread
+   *
+   * @return part files in the order of the records in the Avro file
+   */
+  public static List<Path> writeParts(File avroFile, Path directory, int threads) throws IOException {
+    return writeParts(avroFile, directory, threads, null);
+  }
+
+  /**
+   * Converts the Avro file into one Parquet part file per thread, encrypted when {@code encryption} isn't null. Every
+   * part is encrypted with the same keys but has its own file AAD.
+   *
+   * @return part files in the order of the records in the Avro file
+   */
+  public static List<Path> writeParts(File avroFile, Path directory, int threads, ParquetEncryption encryption)
+    throws IOException {
+    final long length = avroFile.length();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Path>> parts = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final long start = length * i / threads;
+        final long end = length * (i + 1) / threads;
+        final Path part = directory.resolve(String.format("part-%05d.parquet", i));
+        parts.add(executor.submit(() -> writePart(avroFile, start, end, part, encryption)));
+      }
+      final List<Path> result = new ArrayList<>();
+      for (Future<Path> part : parts) {
+        result.add(part.get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while converting " + avroFile, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to convert " + avroFile, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Converts the Avro file on several threads and stitches the parts into a single Parquet file by appending their
+   * row groups as they are, without decoding them again
+   */
+  public static void writeToParquet(File avroFile, OutputFile outputFile, int threads) throws IOException {
+    final Path directory = Files.createTempDirectory("parquet-parts");
+    try {
+      final List<Path> parts = writeParts(avroFile, directory, threads);
+      final ParquetMetadata footer;
+      try (ParquetFileReader reader = ParquetFileReader.open(inputFile(parts.get(0)))) {
+        footer = reader.getFooter();
+      }
+      try {
+        final ParquetFileWriter writer = new ParquetFileWriter(outputFile, footer.getFileMetaData().getSchema(),
+          ParquetFileWriter.Mode.CREATE, ParquetWriter.DEFAULT_BLOCK_SIZE, 0,
+          ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH, ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH,
+          ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+        writer.start();
+        for (Path part : parts) {
+          appendPart(writer, part);
+        }
+        // keeps the Avro schema and writer model of the parts
+        writer.end(footer.getFileMetaData().getKeyValueMetaData());
+      } catch (IOException | RuntimeException e) {
+        LoadParquet.abort(outputFile);
+        throw e;
+      }
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.deleteIfExists(file);
+        }
+      }
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  /**
+   * Copies the row groups of a part like {@link ParquetFileWriter#appendFile}, but keeps their column indexes, offset
+   * indexes and bloom filters, which appendFile drops
+   */
+  private static void appendPart(ParquetFileWriter writer, Path part) throws IOException {
+    final InputFile file = inputFile(part);
+    try (ParquetFileReader reader = ParquetFileReader.open(file); SeekableInputStream in = file.newStream()) {
+      final MessageType schema = reader.getFileMetaData().getSchema();
+      for (BlockMetaData rowGroup : reader.getRowGroups()) {
+        writer.startBlock(rowGroup.getRowCount());
+        for (ColumnChunkMetaData chunk : rowGroup.getColumns()) {
+          // the chunk is copied to the current position, appendColumnChunk moves its metadata but not its page offsets
+          final long shift = writer.getPos() - chunk.getStartingPos();
+          writer.appendColumnChunk(schema.getColumnDescription(chunk.getPath().toArray()), in, chunk,
+            reader.readBloomFilter(chunk), reader.readColumnIndex(chunk), shift(reader.readOffsetIndex(chunk), shift));
+        }
+        writer.endBlock();
+      }
+    }
+  }
+
+  private static OffsetIndex shift(OffsetIndex offsetIndex, long shift) {
+    if (offsetIndex == null) {
+      return null;
+    }
+    final OffsetIndexBuilder builder = OffsetIndexBuilder.getBuilder();
+    for (int page = 0; page < offsetIndex.getPageCount(); page++) {
+      builder.add(offsetIndex.getOffset(page), offsetIndex.getCompressedPageSize(page), offsetIndex.getFirstRowIndex(page));
+    }
+    return builder.build(shift);
+  }
+
+  private static Path writePart(File avroFile, long start, long end, Path part, ParquetEncryption encryption)
+    throws IOException {
+    final ChunkedOutputFile outputFile = new ChunkedOutputFile(new FileChunkSink(part));
+    try (DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(avroFile, new GenericDatumReader<>());
+      ParquetWriter<Object> writer = LoadParquet.newWriter(outputFile, dataFileReader.getSchema(), encryption)) {
+      try {
+        // blocks belong to the range their sync marker starts in
+        dataFileReader.sync(start);
+        GenericRecord record = null;
+        while (dataFileReader.hasNext() && !dataFileReader.pastSync(end)) {
+          record = dataFileReader.next(record);
+          writer.write(record);
+        }
+      } catch (IOException | RuntimeException e) {
+        LoadParquet.abort(outputFile);
+        throw e;
+      }
+    }
+    return part;
+  }
+
+  private static InputFile inputFile(Path path) {
+    return new LocalInputFile(path);
+  }
+}
@@ -1,30 +1,244 @@
+import java.io.Closeable;
 import java.io.IOException;
-import java.time.Instant;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
 import org.apache.parquet.column.page.PageReadStore;
-import org.apache.parquet.example.data.Group;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.crypto.DecryptionKeyRetriever;
+import org.apache.parquet.crypto.FileDecryptionProperties;
 import org.apache.parquet.example.data.simple.NanoTime;
-import org.apache.parquet.example.data.simple.SimpleGroup;
-import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.format.converter.ParquetMetadataConverter.MetadataFilter;
 import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopCodecs;
 import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.io.RecordReader;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
 import org.eclipse.collections.api.multimap.list.ListMultimap;
-import org.eclipse.collections.api.multimap.list.MutableListMultimap;
-import org.eclipse.collections.impl.factory.Multimaps;
 import org.joda.time.DateTimeConstants;
 
 public class ParquetConverter {
   public static Stream<ListMultimap<String, String>> getRecords(ParquetFileReader parquetFileReader) {
-    return StreamSupport.stream(new RecordSpliterator(parquetFileReader), false);
+    return StreamSupport.stream(new RecordSpliterator(parquetFileReader, null), false);
+  }
+
+  /**
+   * Streams only the given top-level columns, matched case-insensitively. Only their column chunks are read and
+   * decoded, and the reader's row groups are trimmed to them.
+   *
+   * @throws IllegalArgumentException when a column is not in the file
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(ParquetFileReader parquetFileReader, Set<String> columns) {
+    final MessageType projection = projection(parquetFileReader.getFileMetaData().getSchema(), columns);
+    project(parquetFileReader, projection);
+    return StreamSupport.stream(new RecordSpliterator(parquetFileReader, projection), false);
+  }
+
+  public static Stream<ListMultimap<String, String>> getRecords(InputFile file, boolean parallel) throws IOException {
+    return getRecords(file, ParquetReadOptions.builder().build(), parallel);
+  }
+
+  /**
+   * Streams the records of a file. The stream splits on row group boundaries, so a parallel stream decodes row groups
+   * concurrently: the reader opened to plan the splits reads the leading row groups, every other split opens its own
+   * {@link ParquetFileReader} over the byte range of its row groups, whose footer entries are the only ones it filters.
+   * Readers are closed once their row groups are exhausted, or when the stream is closed.
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(InputFile file, ParquetReadOptions options, boolean parallel)
+    throws IOException {
+    return getRecords(file, options, parallel, null);
+  }
+
+  /**
+   * Streams the records matching the predicate. Row groups that can't match according to their min/max statistics,
+   * dictionary pages or bloom filters are skipped without being read. Within the remaining row groups, the column and
+   * offset indexes select the pages that can match, so only those are decompressed, and their records are filtered
+   * while they are assembled.
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(InputFile file, FilterPredicate predicate, boolean parallel)
+    throws IOException {
+    return getRecords(file, filterOptions(predicate).build(), parallel);
+  }
+
+  /**
+   * Read options pruning row groups by the predicate with all the row group filters available: statistics,
+   * dictionaries and bloom filters, and pages with the page indexes
+   */
+  public static ParquetReadOptions.Builder filterOptions(FilterPredicate predicate) {
+    return ParquetReadOptions.builder()
+      .withRecordFilter(FilterCompat.get(predicate))
+      .useStatsFilter()
+      .useDictionaryFilter()
+      .useBloomFilter()
+      .useColumnIndexFilter()
+      .useRecordFilter();
+  }
+
+  /**
+   * Decryption properties of files written with Parquet modular encryption, to be set with
+   * {@link ParquetReadOptions.Builder#withDecryption}. Keys are looked up by their key metadata, e.g. with a
+   * {@link LocalKeyRetriever}, and cached for all readers opened with the options: the readers of the splits of a file
+   * and of other files with the same keys retrieve each key once. Only the footer and the requested columns are
+   * decrypted, other encrypted columns don't need a key.
+   *
+   * @param aadPrefix the AAD prefix of files written without storing it, null otherwise
+   */
+  public static FileDecryptionProperties decryptionProperties(DecryptionKeyRetriever keys, byte[] aadPrefix) {
+    final FileDecryptionProperties.Builder builder = FileDecryptionProperties.builder()
+      .withKeyRetriever(keys instanceof CachingKeyRetriever ? keys : new CachingKeyRetriever(keys));
+    if (aadPrefix != null) {
+      builder.withAADPrefix(aadPrefix);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Streams the given top-level columns of a file, or all columns when {@code columns} is null. See
+   * {@link #getRecords(ParquetFileReader, Set)}.
+   * A record filter set in the options prunes row groups when the file is opened and then filters records; the
+   * columns it refers to must be among the requested ones.
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(InputFile file, ParquetReadOptions options, boolean parallel,
+    Set<String> columns) throws IOException {
+    return getRecords(file, options, parallel, columns, null);
+  }
+
+  /**
+   * Streams the records of a file while fetching row groups ahead on background threads, see {@link ReadAhead}. No
+   * read-ahead when {@code readAhead} is null. The stream must be closed when it isn't read to the end, to stop the
+   * fetching.
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(InputFile file, ParquetReadOptions options, boolean parallel,
+    Set<String> columns, ReadAhead readAhead) throws IOException {
+    return getRecords(file, null, options, parallel, columns, readAhead);
+  }
+
+  /**
+   * Streams the records of the row groups of a split planned by {@link SplitPlanner}, see
+   * {@link #getRecords(InputFile, ParquetReadOptions, boolean, Set, ReadAhead)}
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(SplitPlanner.Split split, ParquetReadOptions options,
+    boolean parallel, Set<String> columns, ReadAhead readAhead) throws IOException {
+    return getRecords(split.getFile(), split, options, parallel, columns, readAhead);
+  }
+
+  /**
+   * Streams the records of all splits, in order. A parallel stream reads the splits concurrently, each split by one
+   * thread, so the splits should be balanced, as planned by {@link SplitPlanner}.
+   */
+  public static Stream<ListMultimap<String, String>> getRecords(List<SplitPlanner.Split> splits, ParquetReadOptions options,
+    boolean parallel, Set<String> columns) {
+    final Stream<SplitPlanner.Split> stream = parallel ? splits.parallelStream() : splits.stream();
+    return stream.flatMap(split -> {
+      try {
+        return getRecords(split, options, false, columns, null);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static Stream<ListMultimap<String, String>> getRecords(InputFile file, SplitPlanner.Split split,
+    ParquetReadOptions options, boolean parallel, Set<String> columns, ReadAhead readAhead) throws IOException {
+    final Set<Closeable> openReaders = ConcurrentHashMap.newKeySet();
+    return StreamSupport.stream(RecordSpliterator.open(file, split, options, columns, readAhead, openReaders), parallel)
+      .onClose(() -> openReaders.forEach(RecordSpliterator::closeQuietly));
+  }
+
+  /**
+   * A copy of the options with a codec factory of its own. A reader releases the codec factory of its options when it
+   * is closed, so readers used concurrently must not share one. SNAPPY, ZSTD and LZ4 pages are decompressed into
+   * buffers of the options' allocator by an {@link AllocatingCodecFactory}.
+   */
+  static ParquetReadOptions withOwnCodecFactory(ParquetReadOptions options) {
+    return withOwnCodecFactory(options, options.getAllocator(), options.getAllocator(), null);
+  }
+
+  /**
+   * A copy of the options with a codec factory of its own, reading column chunks into buffers of
+   * {@code chunkAllocator} and decompressing pages into buffers of {@code pageAllocator}
+   *
+   * @param metadataFilter row groups of the footer to read, e.g. {@link ParquetMetadataConverter#range}, or null
+   *                       for those of the options
+   */
+  static ParquetReadOptions withOwnCodecFactory(ParquetReadOptions options, ByteBufferAllocator chunkAllocator,
+    ByteBufferAllocator pageAllocator, MetadataFilter metadataFilter) {
+    final ParquetReadOptions.Builder builder;
+    final CompressionCodecFactory codecFactory;
+    if (options instanceof HadoopReadOptions) {
+      final Configuration conf = ((HadoopReadOptions) options).getConf();
+      builder = HadoopReadOptions.builder(conf);
+      codecFactory = HadoopCodecs.newFactory(conf, 0);
+    } else {
+      builder = ParquetReadOptions.builder();
+      codecFactory = HadoopCodecs.newFactory(0);
+    }
+    // copy leaves out the page index and bloom filter flags
+    builder.copy(options)
+      .useColumnIndexFilter(options.useColumnIndexFilter())
+      .useBloomFilter(options.useBloomFilter())
+      .withAllocator(chunkAllocator)
+      .withCodecFactory(new AllocatingCodecFactory(codecFactory, pageAllocator));
+    if (metadataFilter != null) {
+      builder.withMetadataFilter(metadataFilter);
+    }
+    return builder.build();
+  }
+
+  /**
+   * The top-level fields of {@code schema} named in {@code columns}, in file order
+   */
+  static MessageType projection(MessageType schema, Set<String> columns) {
+    final Set<String> remaining = columns.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    final List<Type> fields = new ArrayList<>();
+    for (Type field : schema.getFields()) {
+      if (remaining.remove(field.getName().toLowerCase())) {
+        fields.add(field);
+      }
+    }
+    if (!remaining.isEmpty()) {
+      throw new IllegalArgumentException("Columns " + remaining + " not found in " + schema.getName());
+    }
+    return new MessageType(schema.getName(), fields);
+  }
+
+  /**
+   * Restricts the reader to the columns of the projection, and drops the metadata of all other column chunks from
+   * its row groups.
+   */
+  private static void project(ParquetFileReader reader, MessageType projection) {
+    reader.setRequestedSchema(projection);
+    final List<BlockMetaData> rowGroups = reader.getRowGroups();
+    final MutableParquetMetadata footer = new MutableParquetMetadata(new ParquetMetadata(reader.getFileMetaData(), rowGroups));
+    footer.removeUnneededColumns(projection.getFields().stream().map(field -> field.getName().toLowerCase()).collect(Collectors.toSet()));
+    // getRowGroups returns the reader's own list, so replacing its entries trims the row groups the reader holds on to
+    for (int i = 0; i < rowGroups.size(); i++) {
+      rowGroups.set(i, footer.getBlocks().get(i));
+    }
   }
 
   /**
@@ -32,7 +246,34 @@ public class ParquetConverter {
    * The value of this constant is {@value}.
    */
   public static final long JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH = 2440588;
-  
+  /**
+   * All old parquet files (which haven't "is.date.correct=true" property in metadata) have
+   * a corrupt date shift: {@value} days or 2 * {@value #JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH}
+   */
+  public static final long CORRECT_CORRUPT_DATE_SHIFT = 2 * JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH;
+  // The year 5000 (or 1106685 day from Unix epoch) is chosen as the threshold for auto-detecting date corruption.
+  // This balances two possible cases of bad auto-correction. External tools writing dates in the future will not
+  // be shifted unless they are past this threshold (and we cannot identify them as external files based on the metadata).
+  // On the other hand, historical dates written with Drill wouldn't risk being incorrectly shifted unless they were
+  // something like 10,000 years in the past.
+  public static final int DATE_CORRUPTION_THRESHOLD = (int) LocalDate.of(5000, 1, 1).toEpochDay();
+
+  public static int autoCorrectCorruptedDate(int corruptedDate) {
+    return (int) (corruptedDate - CORRECT_CORRUPT_DATE_SHIFT);
+  }
+
+  /**
+   * Shifts back the days since the Unix epoch of a DATE column that are past {@link #DATE_CORRUPTION_THRESHOLD}, in
+   * place, for files written by the Drill versions with the corrupt date shift (DRILL-4203)
+   */
+  public static void correctCorruptDates(int[] days, int count) {
+    for (int i = 0; i < count; i++) {
+      if (days[i] > DATE_CORRUPTION_THRESHOLD) {
+        days[i] = autoCorrectCorruptedDate(days[i]);
+      }
+    }
+  }
+
   /**
    * Utilities for converting from parquet INT96 binary (impala, hive timestamp)
    * to date time value. This utilizes the Joda library.
@@ -40,6 +281,7 @@ public class ParquetConverter {
   public static class NanoTimeUtils {
 
     public static final long NANOS_PER_MILLISECOND = 1000000;
+    public static final int INT96_LENGTH = 12;
 
     /**
      * @param binaryTimeStampValue
@@ -58,130 +300,357 @@ public class ParquetConverter {
       return (julianDay - JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH) * DateTimeConstants.MILLIS_PER_DAY
         + nanosOfDay / NANOS_PER_MILLISECOND;
     }
+
+    /**
+     * Decodes a batch of INT96 values laid out as in {@link ColumnBatch}: value {@code i} spans {@code offsets[i]} to
+     * {@code offsets[i + 1]} of {@code bytes}, empty for nulls, which are decoded as 0. No allocation per value.
+     *
+     * @param unit of the decoded values since the Unix epoch, nanoseconds overflow past the year 2262
+     * @param correctCorruptDates shift back days past {@link #DATE_CORRUPTION_THRESHOLD} by
+     *                            {@link #CORRECT_CORRUPT_DATE_SHIFT}, as for DATE columns
+     */
+    public static void decode(byte[] bytes, int[] offsets, int count, long[] target, TimeUnit unit,
+      boolean correctCorruptDates) {
+      final long unitsPerDay = unit.convert(1, TimeUnit.DAYS);
+      final long nanosPerUnit = unit.toNanos(1);
+      for (int i = 0; i < count; i++) {
+        final int offset = offsets[i];
+        if (offsets[i + 1] - offset < INT96_LENGTH) {
+          target[i] = 0;
+          continue;
+        }
+        // nanos of day (64-bit) followed by the julian day number (32-bit), little endian
+        final long nanosOfDay = littleEndianLong(bytes, offset);
+        long epochDay = littleEndianInt(bytes, offset + 8) - JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH;
+        if (correctCorruptDates && epochDay > DATE_CORRUPTION_THRESHOLD) {
+          epochDay -= CORRECT_CORRUPT_DATE_SHIFT;
+        }
+        target[i] = epochDay * unitsPerDay + nanosOfDay / nanosPerUnit;
+      }
+    }
+
+    private static long littleEndianLong(byte[] bytes, int offset) {
+      return (littleEndianInt(bytes, offset) & 0xffffffffL) | ((long) littleEndianInt(bytes, offset + 4) << 32);
+    }
+
+    private static int littleEndianInt(byte[] bytes, int offset) {
+      return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+        | (bytes[offset + 3] & 0xff) << 24;
+    }
   }
 
   private static class RecordSpliterator implements Spliterator<ListMultimap<String, String>> {
     private int rowIndex = 0;
-    private int pageNumber = 0;
     private MessageType schema;
     private PageReadStore page = null;
     private MessageColumnIO columnIO;
-    private GroupRecordConverter groupRecordConverter;
-    private RecordReader recordReader = null;
-    private final ParquetFileReader reader;
+    private RecordConverter recordConverter;
+    private RecordReader<ListMultimap<String, String>> recordReader = null;
+    private ParquetFileReader reader;
     private boolean init = false;
 
-    public RecordSpliterator(ParquetFileReader reader) {
+    // Set when the spliterator owns its reader and may be split on row group boundaries
+    private final InputFile file;
+    // Row groups of the file to read, all of them when null
+    private final SplitPlanner.Split split;
+    private final ParquetReadOptions options;
+    // Requested columns, null for all of them
+    private final MessageType projection;
+    // Record filter of the options, row groups were already pruned by it when the reader was opened
+    private final FilterCompat.Filter filter;
+    private final ReadAhead readAhead;
+    // Readers, or their prefetchers when reading ahead, that the stream closes
+    private final Set<Closeable> openReaders;
+    private Closeable openReader = null;
+    private RowGroupPrefetcher prefetcher = null;
+    // Buffers of the column chunks and of the decompressed pages, when the options allocate from a BufferPool
+    private RowGroupBuffers chunkBuffers = null;
+    private RowGroupBuffers pageBuffers = null;
+    private final List<BlockMetaData> rowGroups;
+    // Byte ranges of the row groups in the file, from the start of each to that of the next one, null when the
+    // offsets can't be read
+    private final long[] rangeStarts;
+    private final long[] rangeEnds;
+    private int firstRowGroup;
+    private final int endRowGroup;
+    private long remainingRows;
+    // Reader opened to plan the splits, over all the row groups from the first one, which reads the leading split
+    private ParquetFileReader plannedReader = null;
+
+    public RecordSpliterator(ParquetFileReader reader, MessageType projection) {
+      this(null, null, null, projection, null, reader.getRowGroups(), null, null, 0, reader.getRowGroups().size(), null);
       this.reader = reader;
     }
 
-    private boolean readPage() {
+    private RecordSpliterator(InputFile file, SplitPlanner.Split split, ParquetReadOptions options, MessageType projection,
+      ReadAhead readAhead, List<BlockMetaData> rowGroups, long[] rangeStarts, long[] rangeEnds, int firstRowGroup,
+      int endRowGroup, Set<Closeable> openReaders) {
+      this.file = file;
+      this.split = split;
+      this.options = options;
+      this.projection = projection;
+      this.readAhead = readAhead;
+      this.filter = options != null && options.useRecordFilter() && options.getRecordFilter() != null
+        ? options.getRecordFilter() : FilterCompat.NOOP;
+      this.rowGroups = rowGroups;
+      this.rangeStarts = rangeStarts;
+      this.rangeEnds = rangeEnds;
+      this.firstRowGroup = firstRowGroup;
+      this.endRowGroup = endRowGroup;
+      this.openReaders = openReaders;
+      this.remainingRows = rowGroups.subList(firstRowGroup, endRowGroup).stream().mapToLong(BlockMetaData::getRowCount).sum();
+    }
+
+    /**
+     * Opens the file, or the row groups of the split, to plan the splitting: the reader prunes the row groups with
+     * the filters of the options, and is kept to read the leading split. The other splits open the file over the byte
+     * range of their row groups, so that every row group of the footer is filtered by one reader only.
+     */
+    static RecordSpliterator open(InputFile file, SplitPlanner.Split split, ParquetReadOptions options,
+      Set<String> columns, ReadAhead readAhead, Set<Closeable> openReaders) throws IOException {
+      final RowGroupBuffers chunkBuffers = newBuffers(options);
+      final RowGroupBuffers pageBuffers = newBuffers(options);
+      final ParquetFileReader reader = openFile(file, options, chunkBuffers, pageBuffers, null);
+      openReaders.add(reader);
       try {
-//        logger.debug("Source: {}, Reading Page: {}", reader.getFile(), pageNumber);
-        page = reader.readNextRowGroup();
-        pageNumber++;
-        if (page == null) {
-          return false;
+        final MessageType projection = columns == null ? null : projection(reader.getFileMetaData().getSchema(), columns);
+        // without a filter the reader's row groups are the footer's own list
+        final List<BlockMetaData> footerRowGroups = new ArrayList<>(reader.getFooter().getBlocks());
+        if (split != null) {
+          split.retainRowGroups(reader);
         }
-        recordReader = columnIO.getRecordReader(page, groupRecordConverter);
-        rowIndex = 0;
-      } catch (IOException e) {
-//        logger.error(e.getMessage(),e);
+        final List<BlockMetaData> rowGroups = new ArrayList<>(reader.getRowGroups());
+        long[] rangeStarts = null;
+        long[] rangeEnds = null;
+        if (!rowGroups.isEmpty() && hasReadableOffsets(reader, projection)) {
+          final Map<BlockMetaData, Integer> footerIndexes = new IdentityHashMap<>();
+          for (int i = 0; i < footerRowGroups.size(); i++) {
+            footerIndexes.put(footerRowGroups.get(i), i);
+          }
+          rangeStarts = new long[rowGroups.size()];
+          rangeEnds = new long[rowGroups.size()];
+          for (int i = 0; i < rowGroups.size(); i++) {
+            final int index = footerIndexes.get(rowGroups.get(i));
+            rangeStarts[i] = footerRowGroups.get(index).getStartingPos();
+            rangeEnds[i] = index + 1 < footerRowGroups.size() ? footerRowGroups.get(index + 1).getStartingPos() : Long.MAX_VALUE;
+          }
+        }
+        if (projection != null) {
+          project(reader, projection);
+        }
+        final RecordSpliterator spliterator = new RecordSpliterator(file, split, options, projection, readAhead,
+          rowGroups, rangeStarts, rangeEnds, 0, rowGroups.size(), openReaders);
+        spliterator.plannedReader = reader;
+        spliterator.chunkBuffers = chunkBuffers;
+        spliterator.pageBuffers = pageBuffers;
+        return spliterator;
+      } catch (RuntimeException e) {
+        openReaders.remove(reader);
+        closeQuietly(reader);
+        throw e;
       }
-      return true;
     }
 
+    /**
+     * The offsets of a row group are in the metadata of its first column, which in an encrypted file may have a key of
+     * its own, only required when the column is requested
+     */
+    private static boolean hasReadableOffsets(ParquetFileReader reader, MessageType projection) {
+      return projection == null || reader.getFileMetaData().getFileDecryptor() == null
+        || projection.containsField(reader.getFileMetaData().getSchema().getFieldName(0));
+    }
 
-    @Override
-    public boolean tryAdvance(Consumer<? super ListMultimap<String, String>> action) {
-      if (!init) {
-        schema = reader.getFileMetaData().getSchema();
-        System.out.println(schema);
-        columnIO = new ColumnIOFactory().getColumnIO(schema);
-        groupRecordConverter = new GroupRecordConverter(schema);
-        init = true;
-        readPage();
-      }
-      if (page == null) return false;
-      if (rowIndex == page.getRowCount()) {
-        if (!readPage()) return false;
-      }
-      final ListMultimap<String, String> record = getRecord();
-      action.accept(record);
-      rowIndex++;
-      return true;
+    private static RowGroupBuffers newBuffers(ParquetReadOptions options) {
+      return options.getAllocator() instanceof BufferPool ? new RowGroupBuffers((BufferPool) options.getAllocator()) : null;
     }
 
-    public ListMultimap<String, String> getRecord() {
-      SimpleGroup simpleGroup = (SimpleGroup) recordReader.read();
-      final MutableListMultimap<String, String> record = Multimaps.mutable.list.empty();
-      final List<String> columns = schema.getColumns().stream().map(columnDescriptor -> String.join(".", columnDescriptor.getPath())).collect(
-        Collectors.toList());
+    /**
+     * Opens a reader with a codec factory of its own, allocating through the buffers when the options allocate from a
+     * {@link BufferPool}
+     */
+    private static ParquetFileReader openFile(InputFile file, ParquetReadOptions options, RowGroupBuffers chunkBuffers,
+      RowGroupBuffers pageBuffers, MetadataFilter metadataFilter) throws IOException {
+      return ParquetFileReader.open(file, withOwnCodecFactory(options,
+        chunkBuffers != null ? chunkBuffers : options.getAllocator(),
+        pageBuffers != null ? pageBuffers : options.getAllocator(), metadataFilter));
+    }
 
-      for (int fieldIndex = 0; fieldIndex < schema.getFieldCount(); fieldIndex++) {
-        final String fieldName = columns.get(fieldIndex);
-        if (simpleGroup.getFieldRepetitionCount(fieldIndex) == 0) {
-          record.put(fieldName, null);
+    private void openReader() throws IOException {
+      if (plannedReader != null) {
+        reader = plannedReader;
+        plannedReader = null;
+        retainSplitRowGroups();
+      } else {
+        chunkBuffers = newBuffers(options);
+        pageBuffers = newBuffers(options);
+        if (rangeStarts != null) {
+          // the footer's row groups with their midpoint within the range are this split's, and those in between that
+          // the filters pruned, which they prune again
+          reader = openFile(file, options, chunkBuffers, pageBuffers,
+            ParquetMetadataConverter.range(rangeStarts[firstRowGroup], rangeEnds[endRowGroup - 1]));
+          if (reader.getRowGroups().size() != endRowGroup - firstRowGroup) {
+            // the range holds row groups of other splits, as when the split's row groups aren't consecutive
+            closeQuietly(reader);
+            reader = null;
+          }
+        }
+        if (reader != null) {
+          openReaders.add(reader);
         } else {
-          try {
-            addToField(schema, simpleGroup.getGroup(fieldIndex, 0), record, fieldName);
-          } catch (Exception e) {
-            addPlainTypeAsString(simpleGroup, record, fieldName, schema, fieldIndex, 0);
+          reader = openFile(file, options, chunkBuffers, pageBuffers, null);
+          openReaders.add(reader);
+          if (split != null) {
+            split.retainRowGroups(reader);
           }
+          retainSplitRowGroups();
         }
+        if (projection != null) {
+          project(reader, projection);
+        }
+      }
+      openReader = reader;
+      if (readAhead != null) {
+        // from here on the reader belongs to the prefetcher, which also closes it
+        prefetcher = new RowGroupPrefetcher(reader, !(filter instanceof FilterCompat.NoOpFilter), readAhead,
+          chunkBuffers);
+        openReaders.remove(openReader);
+        openReader = prefetcher;
+        openReaders.add(openReader);
+      }
+    }
+
+    /**
+     * Keeps only the row groups of this split in a reader over all row groups, the reader then stops after the last
+     * one by itself
+     */
+    private void retainSplitRowGroups() {
+      final List<BlockMetaData> readerRowGroups = reader.getRowGroups();
+      readerRowGroups.subList(endRowGroup, readerRowGroups.size()).clear();
+      readerRowGroups.subList(0, firstRowGroup).clear();
+    }
+
+    private void closeReader() {
+      if (openReader != null) {
+        openReaders.remove(openReader);
+        closeQuietly(openReader);
+      }
+    }
+
+    private static void closeQuietly(Closeable reader) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+//        logger.error(e.getMessage(),e);
+      }
+    }
+
+    /**
+     * Returns the buffers of the row group decoded last to the pool. The records hold strings only, so nothing refers
+     * to the buffers anymore; the prefetcher returns the column chunks it read itself.
+     */
+    private void releaseBuffers() {
+      if (pageBuffers != null) {
+        pageBuffers.releaseAllocated();
+      }
+      if (chunkBuffers != null && prefetcher == null) {
+        chunkBuffers.releaseAllocated();
       }
-      return record;
     }
 
-    private static void addPlainTypeAsString(Group group, MutableListMultimap<String, String> record, String fieldName, MessageType schema,
-      int fieldIndex, int repetitonIndex) {
+    private boolean readPage() {
+      releaseBuffers();
       try {
-        if (schema.getColumns().get(10).getPrimitiveType().toString().contains(" int96 ")) {
-          record.put(fieldName, Instant.ofEpochMilli(NanoTimeUtils.getDateTimeValueFromBinary(group.getInt96(fieldIndex, repetitonIndex))).toString());
+//        logger.debug("Source: {}, Reading Page: {}", reader.getFile(), pageNumber);
+        // with a filter, the column and offset indexes narrow the row group down to the pages that can match
+        if (prefetcher != null) {
+          page = prefetcher.next();
         } else {
-          record.put(fieldName, group.getValueToString(fieldIndex, repetitonIndex));
+          page = filter instanceof FilterCompat.NoOpFilter ? reader.readNextRowGroup() : reader.readNextFilteredRowGroup();
         }
-
-//        if (type.getPrimitiveType().equals(PrimitiveType.DECIMAL) && type.getScale() + type.getPrecision() <= 16) {
-//          field.add(DecimalUtility.getBigDecimalFromByteBuffer(simpleGroup.getBinary(fieldIndex, 0).toByteBuffer(), type.getScale()).toPlainString());
-//        } else if(type.getPrimitiveType().equals(PrimitiveType.TIMESTAMP)){
-//          field.add(new SimpleDateFormat("dd-MM-yyyy HH:mm:ss.SSS z").format(new Date(
-//            TimeUnit.MILLISECONDS.convert(simpleGroup.getLong(fieldIndex, 0), TimeUnit.MICROSECONDS))));
-//        } else {
-//          field.add(simpleGroup.getValueToString(fieldIndex, 0));
-//        }
-      } catch (Exception e) {
-        record.put(fieldName, group.getValueToString(fieldIndex, repetitonIndex));
+        if (page == null) {
+          closeReader();
+          return false;
+        }
+        recordReader = columnIO.getRecordReader(page, recordConverter, filter);
+        rowIndex = 0;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+      return true;
     }
-//
-    private static void addToField(final MessageType schema, Group group, MutableListMultimap<String, String> record,
-      String fieldName) {
-      if (group.getFieldRepetitionCount(0) == 0) {
-        record.put(fieldName, null);
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ListMultimap<String, String>> action) {
+      if (!init) {
+        if (reader == null) {
+          try {
+            openReader();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        schema = projection != null ? projection : reader.getFileMetaData().getSchema();
+        columnIO = new ColumnIOFactory().getColumnIO(schema);
+        recordConverter = new RecordConverter(RecordPlan.compile(schema));
+        init = true;
+        readPage();
       }
-      for (int repetitionIndex = 0; repetitionIndex < group.getFieldRepetitionCount(0); repetitionIndex++) {
-        try {
-          addToField(schema, group.getGroup(0, repetitionIndex), record, fieldName);
-        } catch (Exception e) {
-          addPlainTypeAsString(group, record, fieldName, schema, 0, repetitionIndex);
+      if (page == null) return false;
+      while (true) {
+        while (rowIndex == page.getRowCount()) {
+          if (!readPage()) return false;
+        }
+        final ListMultimap<String, String> record = recordReader.read();
+        rowIndex++;
+        remainingRows--;
+        // records rejected by the filter come back as null
+        if (record != null && !recordReader.shouldSkipCurrentRecord()) {
+          action.accept(record);
+          return true;
         }
       }
     }
 
     @Override
     public Spliterator<ListMultimap<String, String>> trySplit() {
-      return null;
+      if (file == null || init || endRowGroup - firstRowGroup < 2) {
+        return null;
+      }
+      // hand out the leading row groups holding about half of the remaining rows
+      long prefixRows = rowGroups.get(firstRowGroup).getRowCount();
+      int splitRowGroup = firstRowGroup + 1;
+      while (splitRowGroup < endRowGroup - 1 && prefixRows + rowGroups.get(splitRowGroup).getRowCount() <= remainingRows / 2) {
+        prefixRows += rowGroups.get(splitRowGroup).getRowCount();
+        splitRowGroup++;
+      }
+      final RecordSpliterator prefix = new RecordSpliterator(file, split, options, projection, readAhead, rowGroups,
+        rangeStarts, rangeEnds, firstRowGroup, splitRowGroup, openReaders);
+      if (plannedReader != null) {
+        // the planning reader goes with the leading row groups
+        prefix.plannedReader = plannedReader;
+        prefix.chunkBuffers = chunkBuffers;
+        prefix.pageBuffers = pageBuffers;
+        plannedReader = null;
+        chunkBuffers = null;
+        pageBuffers = null;
+      }
+      firstRowGroup = splitRowGroup;
+      remainingRows -= prefixRows;
+      return prefix;
     }
 
     @Override
     public long estimateSize() {
-      return 0;
+      return remainingRows;
     }
 
     @Override
     public int characteristics() {
-      return Spliterator.NONNULL | Spliterator.IMMUTABLE | Spliterator.ORDERED;
+      if (!(filter instanceof FilterCompat.NoOpFilter)) {
+        // the row count is only an upper bound once records are filtered
+        return Spliterator.NONNULL | Spliterator.IMMUTABLE | Spliterator.ORDERED;
+      }
+      return Spliterator.NONNULL | Spliterator.IMMUTABLE | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
     }
   }
 
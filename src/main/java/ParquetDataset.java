@@ -0,0 +1,391 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.schema.IncompatibleSchemaModificationException;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import org.eclipse.collections.api.multimap.list.ListMultimap;
+
+/**
+ * A set of Parquet files read as one: a directory of part files, or the files matching a glob. The schemas of the
+ * files are unified, files may miss some of the columns or have columns of their own, but a column must have the same
+ * type in every file. Files are scanned concurrently by a fixed number of threads, each reading one split of a file at
+ * a time as planned by {@link SplitPlanner}, so many small files are opened in parallel and large files are read by
+ * several threads. Records are handed to the consumer in batches through bounded queues, which bounds the memory taken
+ * by records read ahead.
+ */
+public class ParquetDataset {
+  public static final String DEFAULT_GLOB = "*.parquet";
+  // records per batch handed from a scanning thread to the consumer
+  private static final int BATCH_SIZE = 1024;
+  // batches queued per split being read
+  private static final int QUEUED_BATCHES = 4;
+
+  private final List<InputFile> files;
+  private final ParquetReadOptions options;
+  // lower case top-level columns the dataset was opened for, null for all of them
+  private final Set<String> columns;
+  private final List<CompactFooter> footers;
+  private final MessageType schema;
+  private final int threads;
+  private long splitSize = SplitPlanner.DEFAULT_SPLIT_SIZE;
+
+  /**
+   * Reads the footers of all files concurrently and unifies their schemas
+   *
+   * @throws IllegalArgumentException when a column has different types in two files
+   */
+  public ParquetDataset(List<? extends InputFile> files, int threads) throws IOException {
+    this(files, threads, ParquetReadOptions.builder().build(), null);
+  }
+
+  /**
+   * Reads the footers of all files concurrently, with the given options, and unifies their schemas
+   *
+   * @param options options the footers are read with and the records of {@link #getRecords(boolean)}, e.g. with the
+   *                decryption properties of encrypted files. Their key retriever is shared by all files, see
+   *                {@link ParquetConverter#decryptionProperties}.
+   * @param columns top-level columns that will be read, matched case-insensitively, or null for all of them. The
+   *                footers of encrypted files are trimmed to these, so the other columns need no key.
+   * @throws IllegalArgumentException when a column has different types in two files
+   */
+  public ParquetDataset(List<? extends InputFile> files, int threads, ParquetReadOptions options, Set<String> columns)
+    throws IOException {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    }
+    this.files = Collections.unmodifiableList(new ArrayList<>(files));
+    this.threads = threads;
+    this.options = options;
+    this.columns = columns == null ? null : columns.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    this.footers = readFooters(this.files, threads, options, this.columns);
+    MessageType unified = null;
+    for (int i = 0; i < this.files.size(); i++) {
+      final MessageType fileSchema = footers.get(i).getFileMetaData().getSchema();
+      try {
+        unified = unified == null ? fileSchema : unified.union(fileSchema, true);
+      } catch (IncompatibleSchemaModificationException e) {
+        throw new IllegalArgumentException("Schema of " + this.files.get(i) + " is incompatible with the schema of the previous files", e);
+      }
+    }
+    this.schema = unified == null ? new MessageType("empty") : unified;
+  }
+
+  /**
+   * The Parquet files of a directory, in name order, scanned by as many threads as there are processors
+   */
+  public static ParquetDataset open(Path directory) throws IOException {
+    return open(directory, DEFAULT_GLOB, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * The files of a directory matching a glob, e.g. {@code part-*.parquet}, in name order
+   */
+  public static ParquetDataset open(Path directory, String glob, int threads) throws IOException {
+    return open(directory, glob, threads, ParquetReadOptions.builder().build(), null);
+  }
+
+  /**
+   * The files of a directory matching a glob, in name order, with their footers read with {@code options} and trimmed
+   * to {@code columns} as by {@link #ParquetDataset(List, int, ParquetReadOptions, Set)}
+   */
+  public static ParquetDataset open(Path directory, String glob, int threads, ParquetReadOptions options,
+    Set<String> columns) throws IOException {
+    final List<Path> paths = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+      for (Path path : stream) {
+        if (Files.isRegularFile(path)) {
+          paths.add(path);
+        }
+      }
+    }
+    Collections.sort(paths);
+    return new ParquetDataset(paths.stream().map(LocalInputFile::new).collect(Collectors.toList()), threads, options,
+      columns);
+  }
+
+  private static List<CompactFooter> readFooters(List<InputFile> files, int threads, ParquetReadOptions options,
+    Set<String> columns) throws IOException {
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())),
+      daemonThreads("parquet-dataset-footer"));
+    try {
+      final List<Future<CompactFooter>> futures = new ArrayList<>();
+      for (InputFile file : files) {
+        futures.add(executor.submit(() -> SplitPlanner.readFooter(file, options, columns)));
+      }
+      final List<CompactFooter> footers = new ArrayList<>();
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          footers.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to read the footer of " + files.get(i), e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading footers", e);
+        }
+      }
+      return footers;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  public List<InputFile> getFiles() {
+    return files;
+  }
+
+  /**
+   * The union of the schemas of the files
+   */
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public long getRowCount() {
+    return footers.stream().mapToLong(CompactFooter::getRowCount).sum();
+  }
+
+  /**
+   * Target of compressed bytes per split, files larger than this are read by several threads
+   */
+  public ParquetDataset withSplitSize(long splitSize) {
+    this.splitSize = splitSize;
+    return this;
+  }
+
+  /**
+   * Streams the columns the dataset was opened for, with the options it was opened with
+   */
+  public Stream<ListMultimap<String, String>> getRecords(boolean ordered) {
+    return getRecords(options, columns, ordered);
+  }
+
+  /**
+   * Streams the records of all files. When {@code ordered}, records come file by file and in file order, and the
+   * threads read at most two splits each ahead of the consumer; otherwise records come as soon as they are read.
+   * The stream must be closed when it isn't read to the end, to stop the scanning threads.
+   *
+   * @param options read options of every file, e.g. with a record filter from {@link ParquetConverter#filterOptions}
+   * @param columns top-level columns, matched case-insensitively, or null for all of them. Files with none of the
+   *                columns are skipped. Columns of encrypted files the dataset wasn't opened for are left out of the
+   *                split sizes.
+   * @throws IllegalArgumentException when a column is in none of the files
+   */
+  public Stream<ListMultimap<String, String>> getRecords(ParquetReadOptions options, Set<String> columns, boolean ordered) {
+    if (columns != null) {
+      // validates the columns against the unified schema
+      ParquetConverter.projection(schema, columns);
+    }
+    final List<SplitPlanner.Split> splits = new ArrayList<>();
+    final List<Set<String>> splitColumns = new ArrayList<>();
+    final SplitPlanner planner = new SplitPlanner(splitSize, columns, options);
+    for (int i = 0; i < files.size(); i++) {
+      final Set<String> fileColumns = columns == null ? null : columnsOf(footers.get(i).getFileMetaData().getSchema(), columns);
+      if (fileColumns != null && fileColumns.isEmpty()) {
+        continue;
+      }
+      for (SplitPlanner.Split split : planner.plan(files.get(i), footers.get(i))) {
+        splits.add(split);
+        splitColumns.add(fileColumns);
+      }
+    }
+    final Scan scan = new Scan(splits, splitColumns, options, ordered);
+    final int characteristics = ordered ? Spliterator.NONNULL | Spliterator.ORDERED : Spliterator.NONNULL;
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, characteristics), false)
+      .flatMap(List::stream)
+      .onClose(scan::close);
+  }
+
+  /**
+   * The requested columns that are in the schema of a file
+   */
+  private static Set<String> columnsOf(MessageType fileSchema, Set<String> columns) {
+    final Set<String> requested = columns.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    return fileSchema.getFields().stream()
+      .map(Type::getName)
+      .filter(name -> requested.contains(name.toLowerCase()))
+      .collect(Collectors.toSet());
+  }
+
+  /**
+   * One pass over the splits. Scanning threads put batches of records in per split queues when ordered, the consumer
+   * submits a split once it is done with an earlier one so that only a window of splits is in flight. Unordered, all
+   * threads share one queue and all splits are submitted upfront.
+   */
+  private class Scan implements Iterator<List<ListMultimap<String, String>>>, Closeable {
+    private final List<SplitPlanner.Split> splits;
+    private final List<Set<String>> splitColumns;
+    private final ParquetReadOptions options;
+    private final boolean ordered;
+    private final ExecutorService executor;
+    private final List<BlockingQueue<Batch>> queues = new ArrayList<>();
+    private int submitted = 0;
+    // split being consumed when ordered, number of splits done otherwise
+    private int current = 0;
+    private Batch next = null;
+    private boolean closed = false;
+
+    private Scan(List<SplitPlanner.Split> splits, List<Set<String>> splitColumns, ParquetReadOptions options, boolean ordered) {
+      this.splits = splits;
+      this.splitColumns = splitColumns;
+      this.options = options;
+      this.ordered = ordered;
+      this.executor = Executors.newFixedThreadPool(threads, daemonThreads("parquet-dataset"));
+      if (ordered) {
+        while (submitted < Math.min(splits.size(), 2 * threads)) {
+          submitNext();
+        }
+      } else {
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES * threads);
+        queues.add(queue);
+        while (submitted < splits.size()) {
+          submitNext();
+        }
+      }
+    }
+
+    private void submitNext() {
+      final int index = submitted++;
+      final BlockingQueue<Batch> queue;
+      if (ordered) {
+        queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        queues.add(queue);
+      } else {
+        queue = queues.get(0);
+      }
+      executor.execute(() -> scan(splits.get(index), splitColumns.get(index), queue));
+    }
+
+    private void scan(SplitPlanner.Split split, Set<String> columns, BlockingQueue<Batch> queue) {
+      try (Stream<ListMultimap<String, String>> records = ParquetConverter.getRecords(split, options, false, columns, null)) {
+        List<ListMultimap<String, String>> batch = new ArrayList<>(BATCH_SIZE);
+        final Iterator<ListMultimap<String, String>> iterator = records.iterator();
+        while (iterator.hasNext()) {
+          batch.add(iterator.next());
+          if (batch.size() == BATCH_SIZE) {
+            queue.put(new Batch(batch, false, null));
+            batch = new ArrayList<>(BATCH_SIZE);
+          }
+        }
+        queue.put(new Batch(batch, true, null));
+      } catch (InterruptedException e) {
+        // closed
+      } catch (Throwable e) {
+        // whatever the failure, an Error included, the consumer waits for the split's last batch
+        try {
+          queue.put(new Batch(Collections.emptyList(), true, e));
+        } catch (InterruptedException closed) {
+          // closed
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (closed || current == splits.size()) {
+          close();
+          return false;
+        }
+        final Batch batch;
+        try {
+          batch = queues.get(ordered ? current : 0).take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          close();
+          throw new UncheckedIOException(new InterruptedIOException("Interrupted while reading " + files));
+        }
+        if (batch.failure != null) {
+          close();
+          if (batch.failure instanceof IOException) {
+            throw new UncheckedIOException((IOException) batch.failure);
+          }
+          if (batch.failure instanceof Error) {
+            throw (Error) batch.failure;
+          }
+          throw (RuntimeException) batch.failure;
+        }
+        if (batch.last) {
+          if (ordered) {
+            // the split's queue is no longer needed, and the window moves on
+            queues.set(current, null);
+            if (submitted < splits.size()) {
+              submitNext();
+            }
+          }
+          current++;
+        }
+        if (!batch.records.isEmpty()) {
+          next = batch;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public List<ListMultimap<String, String>> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final List<ListMultimap<String, String>> records = next.records;
+      next = null;
+      return records;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        // interrupts the scanning threads waiting on full queues, they close their readers on the way out
+        executor.shutdownNow();
+        queues.clear();
+      }
+    }
+  }
+
+  private static class Batch {
+    private final List<ListMultimap<String, String>> records;
+    private final boolean last;
+    private final Throwable failure;
+
+    private Batch(List<ListMultimap<String, String>> records, boolean last, Throwable failure) {
+      this.records = records;
+      this.last = last;
+      this.failure = failure;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.parquet.crypto.ColumnEncryptionProperties;
+import org.apache.parquet.crypto.FileEncryptionProperties;
+import org.apache.parquet.crypto.ParquetCipher;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+
+/**
+ * How exported files are encrypted with Parquet modular encryption: the key ids of the footer and of the encrypted
+ * columns, whether the footer itself is encrypted, the cipher and the AAD prefix. Keys are looked up by id in a
+ * {@link KeyProvider}, and the key ids are stored in the files as key metadata, so a {@link LocalKeyRetriever} with
+ * the same keys reads them back.
+ *
+ * Without column keys all columns are encrypted with the footer key; with column keys only those columns are
+ * encrypted, each with its own key, and the other columns are left in plaintext.
+ *
+ * <pre>
+ * ParquetEncryption.withFooterKey(keys, "kf")
+ *   .withColumnKey("ssn", "kc1")
+ *   .withPlaintextFooter()
+ * </pre>
+ */
+public class ParquetEncryption {
+  /**
+   * Source of the encryption keys, by key id
+   */
+  @FunctionalInterface
+  public interface KeyProvider {
+    byte[] getKey(String keyId);
+  }
+
+  private final KeyProvider keys;
+  private final String footerKeyId;
+  // leaf column paths to key ids
+  private final Map<ColumnPath, String> columnKeyIds = new LinkedHashMap<>();
+  private boolean plaintextFooter = false;
+  private ParquetCipher cipher = ParquetCipher.AES_GCM_V1;
+  private byte[] aadPrefix = null;
+  private boolean storeAadPrefix = true;
+
+  private ParquetEncryption(KeyProvider keys, String footerKeyId) {
+    this.keys = keys;
+    this.footerKeyId = footerKeyId;
+  }
+
+  /**
+   * @param footerKeyId key of the footer, which also encrypts all columns unless column keys are given
+   */
+  public static ParquetEncryption withFooterKey(KeyProvider keys, String footerKeyId) {
+    return new ParquetEncryption(keys, footerKeyId);
+  }
+
+  /**
+   * Encrypts a column with its own key
+   *
+   * @param column dotted path of a leaf column, e.g. {@code address.zip}
+   */
+  public ParquetEncryption withColumnKey(String column, String keyId) {
+    columnKeyIds.put(ColumnPath.fromDotString(column), keyId);
+    return this;
+  }
+
+  /**
+   * Leaves the footer readable without keys, signed with the footer key, so that the schema and the plaintext columns
+   * can be read by readers without any key
+   */
+  public ParquetEncryption withPlaintextFooter() {
+    plaintextFooter = true;
+    return this;
+  }
+
+  /**
+   * AES_GCM_V1 (default) authenticates every page; AES_GCM_CTR_V1 only authenticates the metadata and encrypts the
+   * pages with the cheaper CTR mode
+   */
+  public ParquetEncryption withCipher(ParquetCipher cipher) {
+    this.cipher = cipher;
+    return this;
+  }
+
+  /**
+   * Binds the files to a prefix, e.g. the table name, so that they can't be passed off as files of another table
+   *
+   * @param store false to leave the prefix out of the files, readers then have to supply it
+   */
+  public ParquetEncryption withAadPrefix(String aadPrefix, boolean store) {
+    this.aadPrefix = aadPrefix.getBytes(StandardCharsets.UTF_8);
+    this.storeAadPrefix = store;
+    return this;
+  }
+
+  /**
+   * Properties for writing one file. A new set is needed for every file: the properties carry the random unique part
+   * of the file's AAD, which ties every encrypted page to its file.
+   */
+  public FileEncryptionProperties newFileProperties() {
+    final FileEncryptionProperties.Builder builder = FileEncryptionProperties.builder(getKey(footerKeyId))
+      .withFooterKeyID(footerKeyId)
+      .withAlgorithm(cipher);
+    if (!columnKeyIds.isEmpty()) {
+      final Map<ColumnPath, ColumnEncryptionProperties> columns = new HashMap<>();
+      for (Map.Entry<ColumnPath, String> column : columnKeyIds.entrySet()) {
+        columns.put(column.getKey(), ColumnEncryptionProperties.builder(column.getKey())
+          .withKey(getKey(column.getValue()))
+          .withKeyID(column.getValue())
+          .build());
+      }
+      builder.withEncryptedColumns(columns);
+    }
+    if (plaintextFooter) {
+      builder.withPlaintextFooter();
+    }
+    if (aadPrefix != null) {
+      builder.withAADPrefix(aadPrefix);
+      if (!storeAadPrefix) {
+        builder.withoutAADPrefixStorage();
+      }
+    }
+    return builder.build();
+  }
+
+  private byte[] getKey(String keyId) {
+    final byte[] key = keys.getKey(keyId);
+    if (key == null) {
+      throw new IllegalArgumentException("No key with id " + keyId);
+    }
+    return key;
+  }
+}
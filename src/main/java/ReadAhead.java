@@ -0,0 +1,77 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-ahead settings for {@link ParquetConverter#getRecords}: every split of the stream fetches up to {@code depth}
+ * row groups ahead of the one being decoded on a background thread, so storage latency overlaps with decoding.
+ *
+ * The byte budget is shared by all streams read with this instance and counts the compressed size of the row groups
+ * fetched and not yet decoded. A split may always hold one row group, even one larger than the budget, so reads make
+ * progress however small the budget is.
+ */
+public class ReadAhead {
+  public static final int DEFAULT_DEPTH = 2;
+  public static final long DEFAULT_BYTE_BUDGET = 256L * 1024 * 1024;
+
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "parquet-read-ahead");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final int depth;
+  private final long byteBudget;
+  private final ExecutorService executor;
+  private long reservedBytes = 0;
+
+  public ReadAhead() {
+    this(DEFAULT_DEPTH, DEFAULT_BYTE_BUDGET);
+  }
+
+  public ReadAhead(int depth, long byteBudget) {
+    this(depth, byteBudget, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param executor runs one fetching task per split for as long as the split is read, it needs a thread for each
+   */
+  public ReadAhead(int depth, long byteBudget, ExecutorService executor) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Read-ahead depth must be at least 1, was " + depth);
+    }
+    this.depth = depth;
+    this.byteBudget = byteBudget;
+    this.executor = executor;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public long getByteBudget() {
+    return byteBudget;
+  }
+
+  ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public synchronized long getReservedBytes() {
+    return reservedBytes;
+  }
+
+  /**
+   * Waits until the bytes fit into the budget, unless {@code always} is set
+   */
+  synchronized void reserve(long bytes, boolean always) throws InterruptedException {
+    while (!always && reservedBytes > 0 && reservedBytes + bytes > byteBudget) {
+      wait();
+    }
+    reservedBytes += bytes;
+  }
+
+  synchronized void release(long bytes) {
+    reservedBytes -= bytes;
+    notifyAll();
+  }
+}
@@ -0,0 +1,413 @@
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.PrimitiveType;
+import org.eclipse.collections.api.multimap.list.ListMultimap;
+import org.eclipse.collections.api.multimap.list.MutableListMultimap;
+import org.eclipse.collections.impl.factory.Multimaps;
+
+/**
+ * Assembles records straight into the multimaps of {@link ParquetConverter}, with a converter tree compiled from a
+ * {@link RecordPlan}. Values are rendered as the column readers hand them over, so no {@code SimpleGroup} is built per
+ * record or per nested element.
+ *
+ * Top-level fields, and the elements of lists, put their values into the record: lists through
+ * {@link LogicalListL1Converter}, maps one {@code key=value} per entry, structs and everything below them rendered
+ * into one string per value. Dictionary encoded columns render each dictionary entry once.
+ */
+public class RecordConverter extends RecordMaterializer<ListMultimap<String, String>> {
+  /**
+   * Receives the rendered values of a field, null for missing ones
+   */
+  @FunctionalInterface
+  interface ValueSink {
+    void put(String value);
+  }
+
+  private final GroupConverter root;
+  private MutableListMultimap<String, String> record;
+
+  public RecordConverter(RecordPlan plan) {
+    final int fieldCount = plan.getFieldCount();
+    final Converter[] fields = new Converter[fieldCount];
+    final int[] valueCounts = new int[fieldCount];
+    for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+      final int index = fieldIndex;
+      final String fieldName = plan.getFieldName(fieldIndex);
+      fields[fieldIndex] = newConverter(plan.getField(fieldIndex), value -> {
+        valueCounts[index]++;
+        record.put(fieldName, value);
+      });
+    }
+    this.root = new GroupConverter() {
+      @Override
+      public Converter getConverter(int fieldIndex) {
+        return fields[fieldIndex];
+      }
+
+      @Override
+      public void start() {
+        record = Multimaps.mutable.list.empty();
+        Arrays.fill(valueCounts, 0);
+      }
+
+      @Override
+      public void end() {
+        for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+          if (valueCounts[fieldIndex] == 0) {
+            record.put(plan.getFieldName(fieldIndex), null);
+          }
+        }
+      }
+    };
+  }
+
+  @Override
+  public ListMultimap<String, String> getCurrentRecord() {
+    return record;
+  }
+
+  @Override
+  public GroupConverter getRootConverter() {
+    return root;
+  }
+
+  /**
+   * Converter putting the values of a field into the record: leaf values for lists, one per entry for maps, empty
+   * lists and maps put a null
+   */
+  static Converter newConverter(RecordPlan.Node node, ValueSink sink) {
+    switch (node.getKind()) {
+      case LIST:
+        return new LogicalListL1Converter(node, sink);
+      case MAP:
+        return new MapConverter(node, sink);
+      case STRUCT:
+        return GroupRenderer.struct(node, new StringBuilder(), null, sink);
+      default:
+        return new ValueConverter(node.getType(), sink);
+    }
+  }
+
+  /**
+   * Converter appending every value of a field to {@code builder}, calling {@code beforeValue} first
+   */
+  private static Converter newRenderer(RecordPlan.Node node, StringBuilder builder, Runnable beforeValue) {
+    switch (node.getKind()) {
+      case LIST:
+        return GroupRenderer.list(node, builder, beforeValue);
+      case MAP:
+        return GroupRenderer.map(node, builder, beforeValue);
+      case STRUCT:
+        return GroupRenderer.struct(node, builder, beforeValue, null);
+      default:
+        return new ValueConverter(node.getType(), value -> {
+          beforeValue.run();
+          builder.append(value);
+        });
+    }
+  }
+
+  /**
+   * Puts one {@code key=value} per entry, or a null for an empty map
+   */
+  private static class MapConverter extends GroupConverter {
+    private final Converter entries;
+    private final ValueSink sink;
+    private int entryCount;
+
+    private MapConverter(RecordPlan.Node node, ValueSink sink) {
+      this.entries = GroupRenderer.mapEntry(node, new StringBuilder(), null, value -> {
+        entryCount++;
+        sink.put(value);
+      });
+      this.sink = sink;
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return entries;
+    }
+
+    @Override
+    public void start() {
+      entryCount = 0;
+    }
+
+    @Override
+    public void end() {
+      if (entryCount == 0) {
+        sink.put(null);
+      }
+    }
+  }
+
+  /**
+   * Renders a group field by field into a builder shared with the groups around it. Fields come in schema order and
+   * missing fields get no callback, so they are filled in when a later field starts or the group ends: "null", or an
+   * empty pair of brackets for repeated fields. The outermost group of a value owns the builder and hands the
+   * rendered string to its sink.
+   */
+  static class GroupRenderer extends GroupConverter {
+    private final StringBuilder builder;
+    private final String open;
+    private final String close;
+    // per field: text before its values, and the brackets around them for repeated fields, null otherwise
+    private final String[] labels;
+    private final String[] opens;
+    private final String[] closes;
+    private final Converter[] converters;
+    private final Runnable beforeValue;
+    private final ValueSink sink;
+    // the field being rendered when inField, else the first field not rendered yet
+    private int field;
+    private boolean inField;
+
+    private GroupRenderer(StringBuilder builder, String open, String close, int fieldCount, Runnable beforeValue,
+      ValueSink sink) {
+      this.builder = builder;
+      this.open = open;
+      this.close = close;
+      this.labels = new String[fieldCount];
+      this.opens = new String[fieldCount];
+      this.closes = new String[fieldCount];
+      this.converters = new Converter[fieldCount];
+      this.beforeValue = beforeValue;
+      this.sink = sink;
+    }
+
+    /**
+     * {@code {a=1, b=[x, y], c=null}}
+     */
+    static GroupRenderer struct(RecordPlan.Node node, StringBuilder builder, Runnable beforeValue, ValueSink sink) {
+      final RecordPlan.Node[] children = node.getChildren();
+      final GroupRenderer renderer = new GroupRenderer(builder, "{", "}", children.length, beforeValue, sink);
+      for (int i = 0; i < children.length; i++) {
+        renderer.setField(i, (i == 0 ? "" : ", ") + children[i].getName() + "=", children[i]);
+      }
+      return renderer;
+    }
+
+    /**
+     * {@code [a, b]}, the repeated group of a 3-level list renders its element, or "null" when it has none
+     */
+    private static GroupRenderer list(RecordPlan.Node node, StringBuilder builder, Runnable beforeValue) {
+      final GroupRenderer renderer = new GroupRenderer(builder, "", "", 1, beforeValue, null);
+      final RecordPlan.Node element = node.getChildren()[0];
+      if (node.isThreeLevelList()) {
+        final GroupRenderer elementRenderer = new GroupRenderer(builder, "", "", 1, () -> renderer.beforeValue(0), null);
+        elementRenderer.setField(0, "", element);
+        renderer.setField(0, "", "[", "]", elementRenderer);
+      } else {
+        renderer.setField(0, "", "[", "]", newRenderer(element, builder, () -> renderer.beforeValue(0)));
+      }
+      return renderer;
+    }
+
+    /**
+     * {@code {k1=v1, k2=v2}}
+     */
+    private static GroupRenderer map(RecordPlan.Node node, StringBuilder builder, Runnable beforeValue) {
+      final GroupRenderer renderer = new GroupRenderer(builder, "", "", 1, beforeValue, null);
+      renderer.setField(0, "", "{", "}", mapEntry(node, builder, () -> renderer.beforeValue(0), null));
+      return renderer;
+    }
+
+    /**
+     * {@code k=v}
+     */
+    private static GroupRenderer mapEntry(RecordPlan.Node map, StringBuilder builder, Runnable beforeValue, ValueSink sink) {
+      final GroupRenderer renderer = new GroupRenderer(builder, "", "", 2, beforeValue, sink);
+      renderer.setField(0, "", map.getChildren()[0]);
+      renderer.setField(1, "=", map.getChildren()[1]);
+      return renderer;
+    }
+
+    private void setField(int fieldIndex, String label, RecordPlan.Node node) {
+      final Converter converter = newRenderer(node, builder, () -> beforeValue(fieldIndex));
+      if (node.isRepeated()) {
+        setField(fieldIndex, label, "[", "]", converter);
+      } else {
+        setField(fieldIndex, label, null, null, converter);
+      }
+    }
+
+    private void setField(int fieldIndex, String label, String open, String close, Converter converter) {
+      labels[fieldIndex] = label;
+      opens[fieldIndex] = open;
+      closes[fieldIndex] = close;
+      converters[fieldIndex] = converter;
+    }
+
+    /**
+     * Called before each value of a field is appended
+     */
+    private void beforeValue(int fieldIndex) {
+      if (inField && fieldIndex == field) {
+        // next value of a repeated field
+        builder.append(", ");
+        return;
+      }
+      finishFields(fieldIndex);
+      builder.append(labels[fieldIndex]);
+      if (opens[fieldIndex] != null) {
+        builder.append(opens[fieldIndex]);
+      }
+      field = fieldIndex;
+      inField = true;
+    }
+
+    /**
+     * Closes the field being rendered and renders the missing fields before {@code end}
+     */
+    private void finishFields(int end) {
+      int next = field;
+      if (inField) {
+        if (closes[field] != null) {
+          builder.append(closes[field]);
+        }
+        next = field + 1;
+        inField = false;
+      }
+      for (int i = next; i < end; i++) {
+        builder.append(labels[i]);
+        if (opens[i] == null) {
+          builder.append("null");
+        } else {
+          builder.append(opens[i]).append(closes[i]);
+        }
+      }
+      field = end;
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+      if (beforeValue != null) {
+        beforeValue.run();
+      }
+      if (sink != null) {
+        builder.setLength(0);
+      }
+      builder.append(open);
+      field = 0;
+      inField = false;
+    }
+
+    @Override
+    public void end() {
+      finishFields(labels.length);
+      builder.append(close);
+      if (sink != null) {
+        sink.put(builder.toString());
+      }
+    }
+  }
+
+  /**
+   * Renders primitive values with the renderers of {@link ValueRenderers}. With a dictionary, each entry is rendered on
+   * first use and the string reused for the rest of the column chunk.
+   */
+  static class ValueConverter extends PrimitiveConverter {
+    private final PrimitiveType.PrimitiveTypeName typeName;
+    private final ValueSink sink;
+    private final IntFunction<String> ints;
+    private final LongFunction<String> longs;
+    private final Function<Binary, String> binaries;
+    private Dictionary dictionary;
+    private String[] dictionaryValues;
+
+    ValueConverter(PrimitiveType type, ValueSink sink) {
+      this.typeName = type.getPrimitiveTypeName();
+      this.sink = sink;
+      this.ints = ValueRenderers.forInts(type);
+      this.longs = ValueRenderers.forLongs(type);
+      this.binaries = ValueRenderers.forBinaries(type);
+    }
+
+    @Override
+    public boolean hasDictionarySupport() {
+      return true;
+    }
+
+    @Override
+    public void setDictionary(Dictionary dictionary) {
+      this.dictionary = dictionary;
+      this.dictionaryValues = new String[dictionary.getMaxId() + 1];
+    }
+
+    @Override
+    public void addValueFromDictionary(int dictionaryId) {
+      String value = dictionaryValues[dictionaryId];
+      if (value == null) {
+        value = renderDictionaryValue(dictionaryId);
+        dictionaryValues[dictionaryId] = value;
+      }
+      sink.put(value);
+    }
+
+    private String renderDictionaryValue(int dictionaryId) {
+      switch (typeName) {
+        case BOOLEAN:
+          return String.valueOf(dictionary.decodeToBoolean(dictionaryId));
+        case INT32:
+          return ints.apply(dictionary.decodeToInt(dictionaryId));
+        case INT64:
+          return longs.apply(dictionary.decodeToLong(dictionaryId));
+        case INT96:
+          return longs.apply(ParquetConverter.NanoTimeUtils.getDateTimeValueFromBinary(dictionary.decodeToBinary(dictionaryId)));
+        case FLOAT:
+          return String.valueOf(dictionary.decodeToFloat(dictionaryId));
+        case DOUBLE:
+          return String.valueOf(dictionary.decodeToDouble(dictionaryId));
+        default:
+          return binaries.apply(dictionary.decodeToBinary(dictionaryId));
+      }
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      if (typeName == PrimitiveType.PrimitiveTypeName.INT96) {
+        sink.put(longs.apply(ParquetConverter.NanoTimeUtils.getDateTimeValueFromBinary(value)));
+      } else {
+        sink.put(binaries.apply(value));
+      }
+    }
+
+    @Override
+    public void addBoolean(boolean value) {
+      sink.put(String.valueOf(value));
+    }
+
+    @Override
+    public void addDouble(double value) {
+      sink.put(String.valueOf(value));
+    }
+
+    @Override
+    public void addFloat(float value) {
+      sink.put(String.valueOf(value));
+    }
+
+    @Override
+    public void addInt(int value) {
+      sink.put(ints.apply(value));
+    }
+
+    @Override
+    public void addLong(long value) {
+      sink.put(longs.apply(value));
+    }
+  }
+}
@@ -0,0 +1,163 @@
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Per-file plan used by {@link ParquetConverter} to turn records into multimaps. Field names and the shape of every
+ * (nested) field are resolved once from the schema, and {@link RecordConverter} builds its converter tree from them,
+ * so the per-row path only does lookups and never inspects the schema or relies on exceptions.
+ *
+ * Lists are flattened into one value per leaf and keep the name of their leaf column, as before. Maps, structs and
+ * the other nested fields are named after the field and produce one rendered value per entry or per struct.
+ */
+public class RecordPlan {
+  public enum Kind {
+    PRIMITIVE,
+    LIST,
+    MAP,
+    STRUCT
+  }
+
+  public static class Node {
+    private final String name;
+    private final Kind kind;
+    private final boolean repeated;
+    private final PrimitiveType type;
+    private final Node[] children;
+    private final boolean threeLevelList;
+
+    private Node(String name, Kind kind, boolean repeated, PrimitiveType type, Node[] children, boolean threeLevelList) {
+      this.name = name;
+      this.kind = kind;
+      this.repeated = repeated;
+      this.type = type;
+      this.children = children;
+      this.threeLevelList = threeLevelList;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * @return true for repeated fields that are not wrapped in a LIST annotated group
+     */
+    public boolean isRepeated() {
+      return repeated;
+    }
+
+    /**
+     * @return the column type of primitives, null for groups
+     */
+    public PrimitiveType getType() {
+      return type;
+    }
+
+    /**
+     * @return struct fields; the element of a LIST; the key and value of a MAP
+     */
+    public Node[] getChildren() {
+      return children;
+    }
+
+    /**
+     * @return for lists, true when every element is wrapped in its own repeated group (the standard 3-level layout),
+     *         false for legacy 2-level lists whose repeated field is the element itself
+     */
+    public boolean isThreeLevelList() {
+      return threeLevelList;
+    }
+  }
+
+  private final MessageType schema;
+  private final String[] fieldNames;
+  private final Node[] fields;
+
+  private RecordPlan(MessageType schema) {
+    this.schema = schema;
+    final int fieldCount = schema.getFieldCount();
+    this.fieldNames = new String[fieldCount];
+    this.fields = new Node[fieldCount];
+
+    for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+      fields[fieldIndex] = compile(schema.getType(fieldIndex));
+    }
+    // lists are named after the path of their leaf column, everything else after the field
+    for (ColumnDescriptor column : schema.getColumns()) {
+      final int fieldIndex = schema.getFieldIndex(column.getPath()[0]);
+      if (fieldNames[fieldIndex] == null) {
+        fieldNames[fieldIndex] = fields[fieldIndex].getKind() == Kind.LIST ? String.join(".", column.getPath()) : column.getPath()[0];
+      }
+    }
+  }
+
+  public static RecordPlan compile(MessageType schema) {
+    return new RecordPlan(schema);
+  }
+
+  private static Node compile(Type type) {
+    final boolean repeated = type.isRepetition(Type.Repetition.REPEATED);
+    if (type.isPrimitive()) {
+      return new Node(type.getName(), Kind.PRIMITIVE, repeated, type.asPrimitiveType(), null, false);
+    }
+    final GroupType groupType = type.asGroupType();
+    final LogicalTypeAnnotation annotation = groupType.getLogicalTypeAnnotation();
+    if (annotation instanceof LogicalTypeAnnotation.ListLogicalTypeAnnotation && groupType.getFieldCount() == 1
+      && groupType.getType(0).isRepetition(Type.Repetition.REPEATED)) {
+      final Type repeatedType = groupType.getType(0);
+      if (isListElement(repeatedType, groupType.getName())) {
+        return new Node(type.getName(), Kind.LIST, repeated, null, new Node[] {compileElement(repeatedType)}, false);
+      }
+      return new Node(type.getName(), Kind.LIST, repeated, null, new Node[] {compile(repeatedType.asGroupType().getType(0))}, true);
+    }
+    if ((annotation instanceof LogicalTypeAnnotation.MapLogicalTypeAnnotation
+      || annotation instanceof LogicalTypeAnnotation.MapKeyValueTypeAnnotation) && groupType.getFieldCount() == 1
+      && !groupType.getType(0).isPrimitive() && groupType.getType(0).asGroupType().getFieldCount() == 2) {
+      final GroupType keyValue = groupType.getType(0).asGroupType();
+      return new Node(type.getName(), Kind.MAP, repeated, null, new Node[] {compile(keyValue.getType(0)), compile(keyValue.getType(1))},
+        false);
+    }
+    final Node[] children = new Node[groupType.getFieldCount()];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = compile(groupType.getType(i));
+    }
+    return new Node(type.getName(), Kind.STRUCT, repeated, null, children, false);
+  }
+
+  /**
+   * Backward compatibility rules of the LIST spec: the repeated field is itself the element when it is a primitive,
+   * has several fields, or is named "array" or "&lt;list-name&gt;_tuple"
+   */
+  private static boolean isListElement(Type repeatedType, String listName) {
+    return repeatedType.isPrimitive() || repeatedType.asGroupType().getFieldCount() > 1 || repeatedType.getName().equals("array")
+      || repeatedType.getName().equals(listName + "_tuple");
+  }
+
+  private static Node compileElement(Type repeatedType) {
+    final Node node = compile(repeatedType);
+    return new Node(node.name, node.kind, false, node.type, node.children, node.threeLevelList);
+  }
+
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public int getFieldCount() {
+    return fields.length;
+  }
+
+  public String getFieldName(int fieldIndex) {
+    return fieldNames[fieldIndex];
+  }
+
+  public Node getField(int fieldIndex) {
+    return fields[fieldIndex];
+  }
+}
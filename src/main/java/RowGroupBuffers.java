@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+
+/**
+ * Allocates from a {@link BufferPool} on behalf of one reader and remembers the buffers, so that they can be returned
+ * to the pool together once the row group they were read for has been decoded. parquet-mr never releases what it
+ * allocates, so the buffers are taken with {@link #takeAllocated()} right after the reader is done with a row group
+ * and released later by whoever knows the row group is done with.
+ */
+class RowGroupBuffers implements ByteBufferAllocator {
+  private final BufferPool pool;
+  private final List<ByteBuffer> allocated = new ArrayList<>();
+
+  RowGroupBuffers(BufferPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public synchronized ByteBuffer allocate(int size) {
+    final ByteBuffer buffer = pool.allocate(size);
+    allocated.add(buffer);
+    return buffer;
+  }
+
+  @Override
+  public void release(ByteBuffer buffer) {
+    synchronized (this) {
+      // ByteBuffer.equals compares contents
+      int index = allocated.size() - 1;
+      while (index >= 0 && allocated.get(index) != buffer) {
+        index--;
+      }
+      if (index < 0) {
+        return;
+      }
+      allocated.remove(index);
+    }
+    pool.release(buffer);
+  }
+
+  @Override
+  public boolean isDirect() {
+    return pool.isDirect();
+  }
+
+  /**
+   * The buffers allocated since the last call, which are no longer tracked
+   */
+  synchronized List<ByteBuffer> takeAllocated() {
+    final List<ByteBuffer> buffers = new ArrayList<>(allocated);
+    allocated.clear();
+    return buffers;
+  }
+
+  /**
+   * Returns buffers taken with {@link #takeAllocated()} to the pool
+   */
+  void releaseAll(List<ByteBuffer> buffers) {
+    for (ByteBuffer buffer : buffers) {
+      pool.release(buffer);
+    }
+  }
+
+  /**
+   * Returns all buffers allocated since the last {@link #takeAllocated()} to the pool
+   */
+  void releaseAllocated() {
+    releaseAll(takeAllocated());
+  }
+}
@@ -0,0 +1,186 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+
+/**
+ * Fetches the row groups of a reader on a background thread, ahead of the consumer, within the limits of a
+ * {@link ReadAhead}. Once started, the reader belongs to the background thread until {@link #close()}, which also
+ * closes the reader.
+ */
+class RowGroupPrefetcher implements Closeable {
+  private final ParquetFileReader reader;
+  private final boolean filtered;
+  private final ReadAhead readAhead;
+  // allocator of the reader when its column chunks go back to a pool, null otherwise
+  private final RowGroupBuffers chunkBuffers;
+  private final BlockingQueue<Fetched> fetched = new LinkedBlockingQueue<>();
+  // one permit per row group held, the one being decoded included
+  private final Semaphore permits;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private Thread fetcher = null;
+  private boolean started = false;
+  private boolean closed = false;
+  // bytes reserved in the budget by this prefetcher, changed by both threads
+  private long reservedBytes = 0;
+  private Fetched current = null;
+
+  /**
+   * @param filtered     read through {@link ParquetFileReader#readNextFilteredRowGroup()}
+   * @param chunkBuffers the reader's allocator, whose buffers are returned to the pool as their row group is
+   *                     released, or null
+   */
+  RowGroupPrefetcher(ParquetFileReader reader, boolean filtered, ReadAhead readAhead, RowGroupBuffers chunkBuffers) {
+    this.reader = reader;
+    this.filtered = filtered;
+    this.readAhead = readAhead;
+    this.chunkBuffers = chunkBuffers;
+    this.permits = new Semaphore(readAhead.getDepth() + 1);
+    readAhead.getExecutor().execute(this::fetch);
+  }
+
+  /**
+   * Releases the row group returned last and returns the next one, waiting for it to be fetched
+   *
+   * @return null after the last row group
+   */
+  PageReadStore next() throws IOException {
+    if (current != null) {
+      release(current.bytes);
+      if (chunkBuffers != null) {
+        chunkBuffers.releaseAll(current.buffers);
+      }
+      permits.release();
+      current = null;
+    }
+    final Fetched next;
+    try {
+      next = fetched.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the next row group");
+    }
+    if (next.failure instanceof Error) {
+      throw (Error) next.failure;
+    }
+    if (next.failure != null) {
+      throw new IOException("Failed to read ahead", next.failure);
+    }
+    if (next.page != null) {
+      current = next;
+    }
+    return next.page;
+  }
+
+  private void fetch() {
+    synchronized (this) {
+      if (closed) {
+        done.countDown();
+        return;
+      }
+      started = true;
+      fetcher = Thread.currentThread();
+    }
+    try {
+      final List<BlockMetaData> rowGroups = reader.getRowGroups();
+      // estimates, filtered reads may pass over row groups without matches
+      for (int index = 0; ; index++) {
+        final long bytes = index < rowGroups.size() ? rowGroups.get(index).getCompressedSize() : 0;
+        permits.acquire();
+        readAhead.reserve(bytes, getReservedBytes() == 0);
+        addReservedBytes(bytes);
+        final PageReadStore page = filtered ? reader.readNextFilteredRowGroup() : reader.readNextRowGroup();
+        if (page == null) {
+          release(bytes);
+          fetched.put(new Fetched(null, 0, Collections.emptyList(), null));
+          return;
+        }
+        // only this thread reads, so the buffers allocated since the last row group are this row group's
+        final List<ByteBuffer> buffers = chunkBuffers == null ? Collections.emptyList() : chunkBuffers.takeAllocated();
+        fetched.put(new Fetched(page, bytes, buffers, null));
+      }
+    } catch (InterruptedException e) {
+      // closed
+    } catch (Throwable e) {
+      // next() waits for a row group or a failure, whatever the failure, an Error included
+      fetched.add(new Fetched(null, 0, Collections.emptyList(), e));
+    } finally {
+      synchronized (this) {
+        fetcher = null;
+      }
+      // an interrupt from close() must not leak into the next task of the pool thread
+      Thread.interrupted();
+      done.countDown();
+    }
+  }
+
+  private synchronized long getReservedBytes() {
+    return reservedBytes;
+  }
+
+  private synchronized void addReservedBytes(long bytes) {
+    reservedBytes += bytes;
+  }
+
+  private synchronized void release(long bytes) {
+    reservedBytes -= bytes;
+    readAhead.release(bytes);
+  }
+
+  /**
+   * Stops fetching, returns the reserved bytes to the budget and closes the reader
+   */
+  @Override
+  public void close() throws IOException {
+    final boolean wait;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      wait = started;
+      if (fetcher != null) {
+        fetcher.interrupt();
+      }
+    }
+    try {
+      if (wait) {
+        done.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      synchronized (this) {
+        readAhead.release(reservedBytes);
+        reservedBytes = 0;
+      }
+      fetched.clear();
+      current = null;
+      reader.close();
+    }
+  }
+
+  private static class Fetched {
+    private final PageReadStore page;
+    private final long bytes;
+    // column chunk buffers to return to the pool
+    private final List<ByteBuffer> buffers;
+    private final Throwable failure;
+
+    private Fetched(PageReadStore page, long bytes, List<ByteBuffer> buffers, Throwable failure) {
+      this.page = page;
+      this.bytes = bytes;
+      this.buffers = buffers;
+      this.failure = failure;
+    }
+  }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.crypto.InternalFileDecryptor;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+
+/**
+ * Plans the reading of a set of Parquet files as work units of about the same size: runs of consecutive row groups of
+ * one file, weighted by the compressed bytes of the requested columns. Large files are cut into several splits and
+ * small ones make a split each, and {@link #assign} spreads the splits over workers so that none of them ends up with
+ * a few huge files. Splits are read with {@link ParquetConverter#getRecords(Split, org.apache.parquet.ParquetReadOptions,
+ * boolean, Set, ReadAhead)}.
+ */
+public class SplitPlanner {
+  public static final long DEFAULT_SPLIT_SIZE = 128L * 1024 * 1024;
+
+  private final long splitSize;
+  // lower case top-level columns, null for all of them
+  private final Set<String> columns;
+  private final ParquetReadOptions options;
+
+  public SplitPlanner() {
+    this(DEFAULT_SPLIT_SIZE, null);
+  }
+
+  /**
+   * @param splitSize target of compressed bytes of the requested columns per split
+   * @param columns top-level columns that will be read, matched case-insensitively, or null for all of them
+   */
+  public SplitPlanner(long splitSize, Set<String> columns) {
+    this(splitSize, columns, ParquetReadOptions.builder().build());
+  }
+
+  /**
+   * @param options options the footers are read with, e.g. the decryption properties of encrypted files
+   */
+  public SplitPlanner(long splitSize, Set<String> columns, ParquetReadOptions options) {
+    if (splitSize <= 0) {
+      throw new IllegalArgumentException("Split size must be positive: " + splitSize);
+    }
+    this.splitSize = splitSize;
+    this.columns = columns == null ? null : columns.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    this.options = options;
+  }
+
+  /**
+   * Plans the splits of all files, in file order. Footers are read concurrently, as opening the files takes most of
+   * the planning time.
+   */
+  public List<Split> plan(List<? extends InputFile> files) throws IOException {
+    try {
+      return files.parallelStream()
+        .map(file -> {
+          try {
+            return plan(file, readFooter(file, options, columns));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  static CompactFooter readFooter(InputFile file) throws IOException {
+    return readFooter(file, ParquetReadOptions.builder().build(), null);
+  }
+
+  /**
+   * Reads the footer of a file for planning. Compacting a footer reads the metadata of every column chunk, and in an
+   * encrypted file that of a column is decrypted with the column's key, so the footer of an encrypted file is first
+   * trimmed to the requested columns: the others are neither decrypted nor required to have a key. Their bytes are
+   * then missing from the compressed bytes of the splits.
+   *
+   * @param columns lower case top-level columns, or null for all of them
+   */
+  static CompactFooter readFooter(InputFile file, ParquetReadOptions options, Set<String> columns) throws IOException {
+    try (ParquetFileReader reader = ParquetFileReader.open(file, options)) {
+      final InternalFileDecryptor decryptor = reader.getFileMetaData().getFileDecryptor();
+      if (columns == null || decryptor == null || decryptor.plaintextFile()) {
+        return new CompactFooter(reader.getFooter());
+      }
+      return new CompactFooter(projectedFooter(reader.getFooter(), columns));
+    }
+  }
+
+  private static ParquetMetadata projectedFooter(ParquetMetadata footer, Set<String> columns) {
+    final List<BlockMetaData> blocks = new ArrayList<>(footer.getBlocks().size());
+    for (BlockMetaData block : footer.getBlocks()) {
+      final BlockMetaData projected = new BlockMetaData();
+      for (ColumnChunkMetaData chunk : block.getColumns()) {
+        // the path is stored in the clear, unlike the rest of the chunk's metadata
+        if (columns.contains(chunk.getPath().toArray()[0].toLowerCase())) {
+          projected.addColumn(chunk);
+        }
+      }
+      projected.setPath(block.getPath());
+      projected.setRowCount(block.getRowCount());
+      projected.setTotalByteSize(block.getTotalByteSize());
+      projected.setOrdinal(block.getOrdinal());
+      blocks.add(projected);
+    }
+    return new ParquetMetadata(footer.getFileMetaData(), blocks);
+  }
+
+  /**
+   * Cuts the row groups of one file into runs of about the split size. The file's total is divided evenly among as
+   * many splits as it needs, so a file just over the split size makes two halves rather than a full split and a
+   * remainder. A row group larger than the split size makes a split of its own.
+   */
+  public List<Split> plan(InputFile file, CompactFooter footer) {
+    final long[] compressedBytes = new long[footer.getRowGroupCount()];
+    final long[] projectedBytes = new long[footer.getRowGroupCount()];
+    final boolean[] projected = projectedColumns(footer);
+    final CompactFooter.ColumnChunk chunk = footer.newColumnChunk();
+    long totalBytes = 0;
+    for (int rowGroup = 0; rowGroup < footer.getRowGroupCount(); rowGroup++) {
+      for (int column = 0; column < footer.getColumnCount(); column++) {
+        final long size = chunk.moveTo(rowGroup, column).getTotalSize();
+        compressedBytes[rowGroup] += size;
+        if (projected[column]) {
+          projectedBytes[rowGroup] += size;
+        }
+      }
+      totalBytes += projectedBytes[rowGroup];
+    }
+
+    final List<Split> splits = new ArrayList<>();
+    final long splitCount = Math.max(1, (totalBytes + splitSize - 1) / splitSize);
+    final long perSplit = Math.max(1, totalBytes / splitCount);
+    int first = 0;
+    long bytes = 0;
+    for (int rowGroup = 0; rowGroup < footer.getRowGroupCount(); rowGroup++) {
+      // cut before a row group that would take the split further past its share than stopping short of it
+      if (rowGroup > first && bytes + projectedBytes[rowGroup] / 2 > perSplit) {
+        splits.add(split(file, footer, first, rowGroup, compressedBytes, projectedBytes));
+        first = rowGroup;
+        bytes = 0;
+      }
+      bytes += projectedBytes[rowGroup];
+    }
+    if (footer.getRowGroupCount() > first) {
+      splits.add(split(file, footer, first, footer.getRowGroupCount(), compressedBytes, projectedBytes));
+    }
+    return splits;
+  }
+
+  private boolean[] projectedColumns(CompactFooter footer) {
+    final boolean[] projected = new boolean[footer.getColumnCount()];
+    for (int column = 0; column < projected.length; column++) {
+      projected[column] = columns == null || columns.contains(footer.getColumnPath(column).toArray()[0].toLowerCase());
+    }
+    return projected;
+  }
+
+  private static Split split(InputFile file, CompactFooter footer, int firstRowGroup, int endRowGroup,
+    long[] compressedBytes, long[] projectedBytes) {
+    final int[] rowGroups = new int[endRowGroup - firstRowGroup];
+    long rowCount = 0;
+    long compressed = 0;
+    long projected = 0;
+    for (int rowGroup = firstRowGroup; rowGroup < endRowGroup; rowGroup++) {
+      rowGroups[rowGroup - firstRowGroup] = rowGroup;
+      rowCount += footer.getRowCount(rowGroup);
+      compressed += compressedBytes[rowGroup];
+      projected += projectedBytes[rowGroup];
+    }
+    return new Split(file, rowGroups, rowCount, compressed, projected);
+  }
+
+  /**
+   * Spreads the splits over {@code workers} lists of about the same weight, heaviest splits first, each to the
+   * least loaded worker. Splits keep their planned order within a worker's list.
+   */
+  public static List<List<Split>> assign(List<Split> splits, int workers) {
+    if (workers <= 0) {
+      throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+    }
+    final List<Integer> heaviestFirst = new ArrayList<>();
+    for (int i = 0; i < splits.size(); i++) {
+      heaviestFirst.add(i);
+    }
+    heaviestFirst.sort(Comparator.comparingLong((Integer i) -> splits.get(i).getWeight()).reversed());
+
+    // least loaded worker first, then the lowest numbered one
+    final long[] loads = new long[workers];
+    final PriorityQueue<Integer> leastLoaded = new PriorityQueue<>(workers,
+      Comparator.comparingLong((Integer worker) -> loads[worker]).thenComparing(worker -> worker));
+    for (int worker = 0; worker < workers; worker++) {
+      leastLoaded.add(worker);
+    }
+    final int[] assigned = new int[splits.size()];
+    for (int i : heaviestFirst) {
+      final int worker = leastLoaded.poll();
+      assigned[i] = worker;
+      loads[worker] += splits.get(i).getWeight();
+      leastLoaded.add(worker);
+    }
+
+    final List<List<Split>> assignment = new ArrayList<>(workers);
+    for (int worker = 0; worker < workers; worker++) {
+      assignment.add(new ArrayList<>());
+    }
+    for (int i = 0; i < splits.size(); i++) {
+      assignment.get(assigned[i]).add(splits.get(i));
+    }
+    return assignment;
+  }
+
+  /**
+   * Row groups whose first data page is within a byte range of the file, e.g. the range of a Hadoop FileSplit, so
+   * that every row group belongs to exactly one of the ranges covering the file
+   */
+  public static List<Integer> getRowGroupNumbersFromFileSplit(final long splitStart, final long splitLength,
+    final CompactFooter footer) {
+    final List<Integer> rowGroupNums = new ArrayList<>();
+    if (footer.getColumnCount() == 0) {
+      return rowGroupNums;
+    }
+    final CompactFooter.ColumnChunk chunk = footer.newColumnChunk();
+    for (int i = 0; i < footer.getRowGroupCount(); i++) {
+      final long firstDataPage = chunk.moveTo(i, 0).getFirstDataPageOffset();
+      if (firstDataPage >= splitStart && firstDataPage < splitStart + splitLength) {
+        rowGroupNums.add(i);
+      }
+    }
+    return rowGroupNums;
+  }
+
+  /**
+   * A set of row groups of one file. Row groups are numbered by their position in the footer, before any filtering.
+   */
+  public static class Split {
+    private final InputFile file;
+    private final int[] rowGroups;
+    private final long rowCount;
+    private final long compressedBytes;
+    private final long projectedBytes;
+
+    public Split(InputFile file, int[] rowGroups, long rowCount, long compressedBytes, long projectedBytes) {
+      this.file = file;
+      this.rowGroups = rowGroups.clone();
+      Arrays.sort(this.rowGroups);
+      this.rowCount = rowCount;
+      this.compressedBytes = compressedBytes;
+      this.projectedBytes = projectedBytes;
+    }
+
+    public InputFile getFile() {
+      return file;
+    }
+
+    public int[] getRowGroups() {
+      return rowGroups.clone();
+    }
+
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    /**
+     * Compressed bytes of all columns of the row groups
+     */
+    public long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    /**
+     * Compressed bytes of the requested columns of the row groups
+     */
+    public long getProjectedBytes() {
+      return projectedBytes;
+    }
+
+    public long getWeight() {
+      return projectedBytes;
+    }
+
+    /**
+     * Keeps only the row groups of this split in a reader of its file. The reader's row groups may already be pruned
+     * by a filter or trimmed to a projection, so they are matched to the footer's by ordinal when the file has them,
+     * else by starting position. Encrypted files always have ordinals, and the starting position of their row groups
+     * comes from the encrypted metadata of the first column.
+     */
+    void retainRowGroups(ParquetFileReader reader) {
+      final List<BlockMetaData> footerRowGroups = reader.getFooter().getBlocks();
+      if (hasOrdinals(footerRowGroups)) {
+        final Set<Integer> ordinals = new HashSet<>();
+        for (int rowGroup : rowGroups) {
+          ordinals.add(rowGroup);
+        }
+        reader.getRowGroups().removeIf(rowGroup -> !ordinals.contains(rowGroup.getOrdinal()));
+        return;
+      }
+      final Set<Long> startingPositions = new HashSet<>();
+      for (int rowGroup : rowGroups) {
+        startingPositions.add(footerRowGroups.get(rowGroup).getStartingPos());
+      }
+      reader.getRowGroups().removeIf(rowGroup -> !startingPositions.contains(rowGroup.getStartingPos()));
+    }
+
+    /**
+     * Files without ordinals have them all 0
+     */
+    private static boolean hasOrdinals(List<BlockMetaData> footerRowGroups) {
+      for (int i = 0; i < footerRowGroups.size(); i++) {
+        if (footerRowGroups.get(i).getOrdinal() != i) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return file + " row groups " + Arrays.toString(rowGroups) + " (" + rowCount + " rows, " + projectedBytes + " of "
+        + compressedBytes + " bytes)";
+    }
+  }
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType;
+import org.eclipse.collections.api.list.ListIterable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.list.primitive.BooleanList;
+import org.eclipse.collections.api.list.primitive.DoubleList;
+import org.eclipse.collections.api.list.primitive.FloatList;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.eclipse.collections.api.list.primitive.LongList;
+import org.eclipse.collections.api.multimap.list.ListMultimap;
+import org.eclipse.collections.api.multimap.list.MutableListMultimap;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Multimaps;
+import org.eclipse.collections.impl.list.mutable.primitive.BooleanArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.FloatArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+/**
+ * Rows of a flat Parquet file held as typed column vectors: Eclipse Collections primitive lists for numbers and
+ * booleans, dictionary-encoded strings for the binary columns, and a null bitmap per optional column. Unlike the
+ * {@code ListMultimap<String, String>} records of {@link ParquetConverter}, no object is kept per value, so a numeric
+ * table takes a few bytes per cell instead of a String and a multimap entry. {@link #toMultimap(int)} renders a row as
+ * the multimap {@link ParquetConverter#getRecords} would.
+ *
+ * <pre>
+ * try (ColumnarBatchReader batches = new ColumnarBatchReader(reader)) {
+ *   while (batches.nextBatch()) {
+ *     TypedBatch batch = TypedBatch.copyOf(batches);
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class TypedBatch {
+  public enum Kind {
+    BOOLEAN,
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    // BINARY and FIXED_LEN_BYTE_ARRAY values, as rendered strings
+    STRING
+  }
+
+  private final List<Column> columns;
+  private final int rowCount;
+
+  private TypedBatch(List<Column> columns, int rowCount) {
+    this.columns = Collections.unmodifiableList(columns);
+    this.rowCount = rowCount;
+  }
+
+  /**
+   * Copies the current batch of a reader. INT96 timestamps become LONG columns of epoch millis.
+   *
+   * @throws IllegalArgumentException when the file has nested or repeated columns
+   */
+  public static TypedBatch copyOf(ColumnarBatchReader reader) {
+    final List<Column> columns = new ArrayList<>();
+    for (ColumnBatch batch : reader.getColumns()) {
+      columns.add(Column.copyOf(batch));
+    }
+    return new TypedBatch(columns, reader.getRowCount());
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return null when there is no such column
+   */
+  public Column getColumn(String name) {
+    for (Column column : columns) {
+      if (column.getName().equals(name)) {
+        return column;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A row in the record form of {@link ParquetConverter#getRecords}: one entry per column, null for nulls
+   */
+  public ListMultimap<String, String> toMultimap(int row) {
+    final MutableListMultimap<String, String> record = Multimaps.mutable.list.empty();
+    for (Column column : columns) {
+      record.put(column.getName(), column.getString(row));
+    }
+    return record;
+  }
+
+  public Stream<ListMultimap<String, String>> toMultimaps() {
+    return IntStream.range(0, rowCount).mapToObj(this::toMultimap);
+  }
+
+  /**
+   * Estimate of the heap held by the columns, in bytes
+   */
+  public long getSizeInBytes() {
+    return columns.stream().mapToLong(Column::getSizeInBytes).sum();
+  }
+
+  /**
+   * Values of one column. Null rows hold 0, false or code 0 in the vectors, check {@link #isNull(int)}.
+   */
+  public static class Column {
+    private final String name;
+    private final PrimitiveType type;
+    private final Kind kind;
+    private final int rowCount;
+    // null rows, empty for required columns
+    private final BitSet nulls;
+    private BooleanArrayList booleans;
+    private IntArrayList ints;
+    private LongArrayList longs;
+    private FloatArrayList floats;
+    private DoubleArrayList doubles;
+    // row values of STRING columns as indexes into the dictionary
+    private IntArrayList codes;
+    private MutableList<String> dictionary;
+    private IntFunction<String> intRenderer;
+    private LongFunction<String> longRenderer;
+
+    private Column(String name, PrimitiveType type, Kind kind, int rowCount) {
+      this.name = name;
+      this.type = type;
+      this.kind = kind;
+      this.rowCount = rowCount;
+      this.nulls = new BitSet(rowCount);
+    }
+
+    private static Column copyOf(ColumnBatch batch) {
+      final ColumnDescriptor descriptor = batch.getDescriptor();
+      if (descriptor.getPath().length != 1 || descriptor.getMaxRepetitionLevel() > 0) {
+        throw new IllegalArgumentException("Column " + String.join(".", descriptor.getPath())
+          + " is nested or repeated, only flat columns can be typed");
+      }
+      final PrimitiveType type = descriptor.getPrimitiveType();
+      final int rowCount = batch.size();
+      final Column column;
+      switch (type.getPrimitiveTypeName()) {
+        case BOOLEAN:
+          column = new Column(type.getName(), type, Kind.BOOLEAN, rowCount);
+          column.booleans = BooleanArrayList.newListWith(Arrays.copyOf(batch.getBooleans(), rowCount));
+          break;
+        case INT32:
+          column = new Column(type.getName(), type, Kind.INT, rowCount);
+          column.ints = IntArrayList.newListWith(Arrays.copyOf(batch.getInts(), rowCount));
+          column.intRenderer = ValueRenderers.forInts(type);
+          break;
+        case INT64:
+          column = new Column(type.getName(), type, Kind.LONG, rowCount);
+          column.longs = LongArrayList.newListWith(Arrays.copyOf(batch.getLongs(), rowCount));
+          column.longRenderer = ValueRenderers.forLongs(type);
+          break;
+        case INT96:
+          column = new Column(type.getName(), type, Kind.LONG, rowCount);
+          column.longs = LongArrayList.newListWith(
+            Arrays.copyOf(batch.getInt96Timestamps(TimeUnit.MILLISECONDS, false), rowCount));
+          column.longRenderer = ValueRenderers.forLongs(type);
+          break;
+        case FLOAT:
+          column = new Column(type.getName(), type, Kind.FLOAT, rowCount);
+          column.floats = FloatArrayList.newListWith(Arrays.copyOf(batch.getFloats(), rowCount));
+          break;
+        case DOUBLE:
+          column = new Column(type.getName(), type, Kind.DOUBLE, rowCount);
+          column.doubles = DoubleArrayList.newListWith(Arrays.copyOf(batch.getDoubles(), rowCount));
+          break;
+        default:
+          column = new Column(type.getName(), type, Kind.STRING, rowCount);
+          column.encodeStrings(batch, ValueRenderers.forBinaries(type));
+      }
+      for (int row = 0; row < rowCount; row++) {
+        if (batch.isNull(row)) {
+          column.nulls.set(row);
+        }
+      }
+      return column;
+    }
+
+    private void encodeStrings(ColumnBatch batch, Function<Binary, String> renderer) {
+      codes = new IntArrayList(rowCount);
+      dictionary = Lists.mutable.empty();
+      final ObjectIntHashMap<String> index = new ObjectIntHashMap<>();
+      for (int row = 0; row < rowCount; row++) {
+        if (batch.isNull(row)) {
+          codes.add(0);
+          continue;
+        }
+        final String value = renderer.apply(batch.getBinary(row));
+        codes.add(index.getIfAbsentPut(value, () -> {
+          dictionary.add(value);
+          return dictionary.size() - 1;
+        }));
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public PrimitiveType getType() {
+      return type;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    public boolean isNull(int row) {
+      return nulls.get(row);
+    }
+
+    public int getNullCount() {
+      return nulls.cardinality();
+    }
+
+    public BooleanList getBooleans() {
+      return booleans;
+    }
+
+    public IntList getInts() {
+      return ints;
+    }
+
+    public LongList getLongs() {
+      return longs;
+    }
+
+    public FloatList getFloats() {
+      return floats;
+    }
+
+    public DoubleList getDoubles() {
+      return doubles;
+    }
+
+    /**
+     * Dictionary codes of a STRING column, one per row
+     */
+    public IntList getCodes() {
+      return codes;
+    }
+
+    public ListIterable<String> getDictionary() {
+      return dictionary;
+    }
+
+    /**
+     * The value of a row rendered as in the records of {@link ParquetConverter#getRecords}, null for nulls
+     */
+    public String getString(int row) {
+      if (nulls.get(row)) {
+        return null;
+      }
+      switch (kind) {
+        case BOOLEAN:
+          return String.valueOf(booleans.get(row));
+        case INT:
+          return intRenderer.apply(ints.get(row));
+        case LONG:
+          return longRenderer.apply(longs.get(row));
+        case FLOAT:
+          return String.valueOf(floats.get(row));
+        case DOUBLE:
+          return String.valueOf(doubles.get(row));
+        default:
+          return dictionary.get(codes.get(row));
+      }
+    }
+
+    /**
+     * Estimate of the heap held by the vectors, the null bitmap and the dictionary, in bytes
+     */
+    public long getSizeInBytes() {
+      long size = nulls.size() / 8;
+      switch (kind) {
+        case BOOLEAN:
+          size += rowCount / 8;
+          break;
+        case INT:
+        case FLOAT:
+          size += 4L * rowCount;
+          break;
+        case LONG:
+        case DOUBLE:
+          size += 8L * rowCount;
+          break;
+        default:
+          size += 4L * rowCount;
+          for (String value : dictionary) {
+            // String and its array, with the hash map entry used while encoding gone
+            size += 56 + 2L * value.length();
+          }
+      }
+      return size;
+    }
+  }
+}
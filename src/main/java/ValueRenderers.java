@@ -0,0 +1,96 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.DateLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.DecimalLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimestampLogicalTypeAnnotation;
+import org.apache.parquet.schema.PrimitiveType;
+
+/**
+ * Renders the values of a primitive column as strings. The renderer is chosen once per column from the physical type
+ * and the logical type annotation, so rendering a value never inspects the schema. Decimals are rendered as plain
+ * numbers, dates as ISO dates, timestamps as instants or, when not adjusted to UTC, as local date-times, binaries as
+ * UTF-8 and other ints and longs as by {@link String#valueOf}.
+ */
+public class ValueRenderers {
+  public static final long MICROS_PER_SECOND = 1000000;
+  public static final long NANOS_PER_SECOND = 1000000000;
+
+  private static final IntFunction<String> DATE = day -> LocalDate.ofEpochDay(day).toString();
+
+  /**
+   * Renders INT32 values, decimals and dates included
+   */
+  public static IntFunction<String> forInts(PrimitiveType type) {
+    final LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+    if (annotation instanceof DecimalLogicalTypeAnnotation) {
+      final int scale = ((DecimalLogicalTypeAnnotation) annotation).getScale();
+      return value -> BigDecimal.valueOf(value, scale).toPlainString();
+    }
+    if (annotation instanceof DateLogicalTypeAnnotation) {
+      return DATE;
+    }
+    return String::valueOf;
+  }
+
+  /**
+   * Renders INT64 values, decimals and timestamps included. INT96 timestamps are rendered from their epoch millis.
+   */
+  public static LongFunction<String> forLongs(PrimitiveType type) {
+    if (type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.INT96) {
+      return millis -> Instant.ofEpochMilli(millis).toString();
+    }
+    final LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+    if (annotation instanceof DecimalLogicalTypeAnnotation) {
+      final int scale = ((DecimalLogicalTypeAnnotation) annotation).getScale();
+      return value -> BigDecimal.valueOf(value, scale).toPlainString();
+    }
+    if (annotation instanceof TimestampLogicalTypeAnnotation) {
+      return timestamp((TimestampLogicalTypeAnnotation) annotation);
+    }
+    return String::valueOf;
+  }
+
+  /**
+   * Renders BINARY and FIXED_LEN_BYTE_ARRAY values, decimals included
+   */
+  public static Function<Binary, String> forBinaries(PrimitiveType type) {
+    final LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+    if (annotation instanceof DecimalLogicalTypeAnnotation) {
+      final int scale = ((DecimalLogicalTypeAnnotation) annotation).getScale();
+      return value -> new BigDecimal(new BigInteger(value.getBytes()), scale).toPlainString();
+    }
+    return Binary::toStringUsingUTF8;
+  }
+
+  /**
+   * UTC adjusted timestamps are rendered as instants, local timestamps without an offset
+   */
+  private static LongFunction<String> timestamp(TimestampLogicalTypeAnnotation annotation) {
+    final long unitsPerSecond;
+    switch (annotation.getUnit()) {
+      case MILLIS:
+        unitsPerSecond = 1000;
+        break;
+      case MICROS:
+        unitsPerSecond = MICROS_PER_SECOND;
+        break;
+      default:
+        unitsPerSecond = NANOS_PER_SECOND;
+    }
+    final long nanosPerUnit = NANOS_PER_SECOND / unitsPerSecond;
+    if (annotation.isAdjustedToUTC()) {
+      return value -> Instant.ofEpochSecond(Math.floorDiv(value, unitsPerSecond), Math.floorMod(value, unitsPerSecond) * nanosPerUnit).toString();
+    }
+    return value -> LocalDateTime.ofEpochSecond(Math.floorDiv(value, unitsPerSecond), (int) (Math.floorMod(value, unitsPerSecond) * nanosPerUnit),
+      ZoneOffset.UTC).toString();
+  }
+}